@@ -0,0 +1,195 @@
+#!/usr/bin/env python3
+"""Runs the benchmark programs on jlox and clox and compares them.
+
+Every engine is a command that takes a script path. Each program is run
+a few times to warm up the page cache and then measured over repeated
+runs, recording wall time and the peak resident set size of the process.
+The report gives the median, mean, standard deviation and minimum per
+engine and the speed and memory of every engine relative to the first
+one, as markdown on stdout and optionally as JSON.
+
+Before measuring, every engine has to run a probe script and each program
+has to print what it prints on the first engine; engines or programs
+that fail are listed in the report instead of being timed. The clox in
+this repository does not execute programs yet, so for now it shows up
+there.
+
+    jlox-bench/compare-engines.py --runs 10 --json report.json
+    jlox-bench/compare-engines.py --engine jlox-lazy="jlox/bin/jlox --lazy"
+"""
+
+import argparse
+import json
+import os
+import shlex
+import statistics
+import subprocess
+import sys
+import tempfile
+import time
+
+ROOT = os.path.dirname(os.path.dirname(os.path.abspath(__file__)))
+CORPUS = os.path.join(ROOT, "jlox-bench", "src", "main", "resources",
+                      "benchmarks")
+DEFAULT_ENGINES = [
+    ("jlox", os.path.join(ROOT, "jlox", "bin", "jlox")),
+    ("clox", os.path.join(ROOT, "clox", "bin", "clox")),
+]
+PROBE = "var a = 1;\nfun add(b) { return a + b; }\nprint add(2);\n"
+PROBE_OUTPUT = "3\n"
+
+
+def run(command, script):
+    """Runs one script and returns (seconds, peak RSS in KB, rc, stdout)."""
+    with tempfile.TemporaryFile() as out:
+        start = time.perf_counter()
+        process = subprocess.Popen(command + [script], stdout=out,
+                                   stderr=subprocess.DEVNULL)
+        _, status, usage = os.wait4(process.pid, 0)
+        elapsed = time.perf_counter() - start
+        process.returncode = os.waitstatus_to_exitcode(status)
+        out.seek(0)
+        return (elapsed, usage.ru_maxrss, process.returncode,
+                out.read().decode(errors="replace"))
+
+
+def probe(command):
+    """Returns None if the engine runs a small program correctly."""
+    if not os.access(command[0], os.X_OK):
+        return "%s is not built" % command[0]
+
+    with tempfile.NamedTemporaryFile("w", suffix=".lox",
+                                     delete=False) as script:
+        script.write(PROBE)
+    try:
+        _, _, rc, output = run(command, script.name)
+    finally:
+        os.unlink(script.name)
+
+    if rc != 0 or output != PROBE_OUTPUT:
+        return "cannot run Lox programs yet (probe printed %r, exit %d)" % (
+            output[:40], rc)
+    return None
+
+
+def summarize(times, rss):
+    return {
+        "runs": len(times),
+        "median": statistics.median(times),
+        "mean": statistics.mean(times),
+        "stdev": statistics.stdev(times) if len(times) > 1 else 0.0,
+        "min": min(times),
+        "peakRssKb": max(rss),
+    }
+
+
+def measure(engines, programs, warmup, runs):
+    results = {}
+    skipped = {}
+    expected = {}
+    for name, command in engines:
+        reason = probe(command)
+        if reason:
+            skipped[name] = reason
+            print("skipping %s: %s" % (name, reason), file=sys.stderr)
+            continue
+
+        for program in programs:
+            script = os.path.join(CORPUS, program + ".lox")
+            _, _, rc, output = run(command, script)
+            expected.setdefault(program, output)
+            if rc != 0 or output != expected[program]:
+                skipped["%s/%s" % (name, program)] = (
+                    "exit %d or output differs from the first engine" % rc)
+                continue
+
+            for _ in range(warmup):
+                run(command, script)
+
+            times, rss = [], []
+            for _ in range(runs):
+                elapsed, peak, _, _ = run(command, script)
+                times.append(elapsed)
+                rss.append(peak)
+            results.setdefault(program, {})[name] = summarize(times, rss)
+            print("%-16s %-10s %8.1f ms" % (program, name,
+                  1000 * results[program][name]["median"]), file=sys.stderr)
+
+    return results, skipped
+
+
+def markdown(engines, results, skipped, runs):
+    names = [name for name, _ in engines]
+    baseline = names[0]
+    lines = ["# jlox and clox", "",
+             "Median wall time of %d runs per program, peak RSS over all "
+             "runs, and both relative to %s." % (runs, baseline), "",
+             "| program | engine | median ms | mean ms | stdev ms | min ms "
+             "| peak RSS MB | speed vs %s | memory vs %s |" % (baseline,
+                                                              baseline),
+             "|---|---|---:|---:|---:|---:|---:|---:|---:|"]
+    for program, engines_run in sorted(results.items()):
+        base = engines_run.get(baseline)
+        for name in names:
+            stats = engines_run.get(name)
+            if not stats:
+                continue
+            speed = memory = ""
+            if base:
+                speed = "%.2fx" % (base["median"] / stats["median"])
+                memory = "%.2fx" % (stats["peakRssKb"] / base["peakRssKb"])
+            lines.append("| %s | %s | %.1f | %.1f | %.1f | %.1f | %.1f | %s "
+                         "| %s |" % (program, name, 1000 * stats["median"],
+                                     1000 * stats["mean"],
+                                     1000 * stats["stdev"],
+                                     1000 * stats["min"],
+                                     stats["peakRssKb"] / 1024, speed,
+                                     memory))
+
+    if skipped:
+        lines += ["", "Not measured:", ""]
+        lines += ["- %s: %s" % item for item in sorted(skipped.items())]
+    return "\n".join(lines) + "\n"
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--runs", type=int, default=5,
+                        help="measured runs per program (default 5)")
+    parser.add_argument("--warmup", type=int, default=1,
+                        help="unmeasured runs per program (default 1)")
+    parser.add_argument("--engine", action="append", default=[],
+                        metavar="NAME=COMMAND",
+                        help="add an engine; the first one is the baseline")
+    parser.add_argument("--only", action="append", default=[],
+                        metavar="ENGINE", help="run only these engines")
+    parser.add_argument("--json", metavar="FILE", help="write JSON here")
+    parser.add_argument("programs", nargs="*",
+                        help="benchmark names (default: all)")
+    args = parser.parse_args()
+
+    engines = [(name, [command]) for name, command in DEFAULT_ENGINES]
+    for engine in args.engine:
+        name, _, command = engine.partition("=")
+        engines.append((name, shlex.split(command)))
+    if args.only:
+        engines = [engine for engine in engines if engine[0] in args.only]
+    if not engines or args.runs < 1:
+        parser.error("need at least one engine and one run")
+
+    programs = args.programs or sorted(
+        name[:-4] for name in os.listdir(CORPUS) if name.endswith(".lox"))
+
+    results, skipped = measure(engines, programs, args.warmup, args.runs)
+    print(markdown(engines, results, skipped, args.runs))
+
+    if args.json:
+        with open(args.json, "w") as out:
+            json.dump({"engines": {name: command for name, command in engines},
+                       "runs": args.runs, "warmup": args.warmup,
+                       "results": results, "skipped": skipped}, out,
+                      indent=2)
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,51 @@
+package dev.muhings.lox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The benchmark programs in src/main/resources/benchmarks, adapted from the
+ * Crafting Interpreters benchmark suite with iteration counts small enough
+ * for a tree-walking interpreter.
+ */
+final class LoxPrograms {
+  private LoxPrograms() {}
+
+  static String load(String name) {
+    String path = "/benchmarks/" + name + ".lox";
+    try (InputStream in = LoxPrograms.class.getResourceAsStream(path)) {
+      if (in == null) {
+        throw new IllegalArgumentException("No benchmark " + path);
+      }
+
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // The programs print their results; keep that out of the measurements.
+  // Interpreters print through an OutputSink, which takes its writer when
+  // it is made, so they get one that formats and buffers the output and
+  // throws it away. System.out is silenced for anything else, such as
+  // runtime errors.
+  static void silenceOutput() {
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+  }
+
+  static Interpreter interpreter() {
+    return new Interpreter(
+        new OutputSink(Writer.nullWriter(), OutputSink.Flush.FULL));
+  }
+
+  static void checkNoErrors(String name) {
+    if (Lox.hadError || Lox.hadRuntimeError) {
+      throw new IllegalStateException("Benchmark " + name + " failed.");
+    }
+  }
+}
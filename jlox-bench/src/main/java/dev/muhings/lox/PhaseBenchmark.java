@@ -0,0 +1,83 @@
+package dev.muhings.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures each phase of the pipeline on its own. The inputs of every
+ * phase are prepared once in setUp, so scan only scans and interpret only
+ * walks an already resolved tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmark {
+  @Param({
+    "binary_trees", "equality", "fib", "instantiation", "invocation",
+    "method_call", "properties", "string_equality", "trees", "zoo"
+  })
+  public String program;
+
+  private String source;
+  private List<Token> tokens;
+  private List<Stmt> statements;
+  private Interpreter interpreter;
+
+  @Setup
+  public void setUp() {
+    LoxPrograms.silenceOutput();
+    source = LoxPrograms.load(program);
+    tokens = new Scanner(source).scanTokens();
+    statements = new Parser(tokens).parse();
+    interpreter = LoxPrograms.interpreter();
+    new Resolver(interpreter).resolve(statements);
+  }
+
+  @TearDown
+  public void tearDown() {
+    LoxPrograms.checkNoErrors(program);
+  }
+
+  @Benchmark
+  public List<Token> scan() {
+    return new Scanner(source).scanTokens();
+  }
+
+  @Benchmark
+  public List<Stmt> parse() {
+    return new Parser(tokens).parse();
+  }
+
+  // The resolver records scope distances on the tree, so resolving it
+  // again with the same interpreter redoes all the work without the cost
+  // of setting up a new one.
+  @Benchmark
+  public List<Stmt> resolve() {
+    new Resolver(interpreter).resolve(statements);
+    return statements;
+  }
+
+  // Reuses one interpreter, so globals from the previous run are simply
+  // redefined; the programs do not depend on starting from a clean slate.
+  @Benchmark
+  public Interpreter interpret() {
+    interpreter.interpret(statements);
+    return interpreter;
+  }
+}
@@ -0,0 +1,60 @@
+package dev.muhings.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs each benchmark program end to end: scan, parse, resolve and
+ * interpret with a fresh interpreter every time, like a jlox run minus
+ * JVM startup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgramBenchmark {
+  @Param({
+    "binary_trees", "equality", "fib", "instantiation", "invocation",
+    "method_call", "properties", "string_equality", "trees", "zoo"
+  })
+  public String program;
+
+  private String source;
+
+  @Setup
+  public void setUp() {
+    source = LoxPrograms.load(program);
+    LoxPrograms.silenceOutput();
+  }
+
+  @TearDown
+  public void tearDown() {
+    LoxPrograms.checkNoErrors(program);
+  }
+
+  @Benchmark
+  public Interpreter run() {
+    List<Token> tokens = new Scanner(source).scanTokens();
+    List<Stmt> statements = new Parser(tokens).parse();
+
+    Interpreter interpreter = LoxPrograms.interpreter();
+    new Resolver(interpreter).resolve(statements);
+    interpreter.interpret(statements);
+    return interpreter;
+  }
+}
@@ -0,0 +1,72 @@
+#!/usr/bin/env bash
+#
+# Measures jlox startup: the time from launching the JVM to the first line
+# of output, and to exit, with class data sharing off, with the JDK's
+# default CDS archive, and with the AppCDS archive from cds/train.sh.
+#
+# usage: cds/startup-bench.sh [runs] [script]
+
+set -euo pipefail
+
+home="$(cd "$(dirname "$0")/.." && pwd)"
+java="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+jar="$home/target/jlox.jar"
+archive="$home/target/jlox.jsa"
+runs="${1:-20}"
+script="${2:-$home/cds/training/closures.lox}"
+
+if [ ! -f "$jar" ]; then
+  echo "Missing $jar, run mvn package first." >&2
+  exit 1
+fi
+
+# Prints microseconds to the first line of output and to end of output.
+# jlox runs with --flush=line, as output into a pipe is otherwise only
+# written in 64 KB blocks and at exit.
+measure() {
+  local start first end
+  start=$(date +%s%N)
+  exec 3< <("$@" 2> /dev/null)
+  read -r _ <&3 || true
+  first=$(date +%s%N)
+  cat <&3 > /dev/null
+  end=$(date +%s%N)
+  exec 3<&-
+  echo "$(( (first - start) / 1000 )) $(( (end - start) / 1000 ))"
+}
+
+# Reads one number per line and prints median, mean and min in ms.
+stats() {
+  sort -n | awk '{ v[NR] = $1; sum += $1 }
+    END { printf " %9.1f %9.1f %9.1f", v[int((NR + 1) / 2)] / 1000,
+                 sum / NR / 1000, v[1] / 1000 }'
+}
+
+# Reads "first total" pairs from measure and summarizes both columns.
+summarize() {
+  local samples
+  samples="$(cat)"
+  cut -d' ' -f1 <<< "$samples" | stats
+  cut -d' ' -f2 <<< "$samples" | stats
+  echo
+}
+
+bench() {
+  local label="$1"
+  shift
+  for _ in 1 2; do measure "$@" > /dev/null; done
+  printf "%-12s" "$label"
+  for _ in $(seq "$runs"); do measure "$@"; done | summarize
+}
+
+echo "$runs runs of $(basename "$script"), times in ms"
+printf "%-12s %9s %9s %9s %9s %9s %9s\n" "" \
+    "first-p50" "first-avg" "first-min" "total-p50" "total-avg" "total-min"
+bench "no CDS" "$java" -Xshare:off -jar "$jar" --flush=line "$script"
+bench "JDK CDS" "$java" -Xshare:auto -jar "$jar" --flush=line "$script"
+if [ -f "$archive" ]; then
+  bench "AppCDS" "$java" -XX:SharedArchiveFile="$archive" -Xshare:auto \
+      -jar "$jar" --flush=line "$script"
+else
+  echo "No $archive, run cds/train.sh to include AppCDS." >&2
+fi
@@ -0,0 +1,33 @@
+#!/usr/bin/env bash
+#
+# Builds target/jlox.jsa, an AppCDS archive holding every class jlox loads
+# while running the scripts in cds/training. Run after `mvn package`, or
+# let `mvn -Pcds package` run it. The archive only works with the same
+# java binary and the same absolute path to target/jlox.jar, which is
+# what bin/jlox uses.
+
+set -euo pipefail
+
+home="$(cd "$(dirname "$0")/.." && pwd)"
+java="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+jar="$home/target/jlox.jar"
+work="$home/target/cds"
+
+rm -rf "$work"
+mkdir -p "$work"
+
+for script in "$home"/cds/training/*.lox; do
+  name="$(basename "$script" .lox)"
+  # Error scripts exit with 65 or 70 on purpose.
+  "$java" -Xshare:off -XX:DumpLoadedClassList="$work/$name.classlist" \
+      -jar "$jar" "$script" > /dev/null 2>&1 || true
+done
+
+cat "$work"/*.classlist | sort -u > "$work/jlox.classlist"
+
+"$java" -Xshare:dump \
+    -XX:SharedClassListFile="$work/jlox.classlist" \
+    -XX:SharedArchiveFile="$home/target/jlox.jsa" \
+    -cp "$jar" > "$work/dump.log" 2>&1
+
+echo "Wrote $home/target/jlox.jsa"
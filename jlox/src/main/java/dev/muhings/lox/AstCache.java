@@ -0,0 +1,736 @@
+package dev.muhings.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A binary copy of a resolved program, stored next to the script as
+ * "script.lox.cache" so later runs can skip scanning, parsing and
+ * resolving.
+ *
+ * Layout, all integers are unsigned LEB128 varints unless noted:
+ *
+ *   "LOXC" magic, format version (4 bytes), SHA-256 of the source
+ *   string pool:   count, then UTF-8 length and bytes of every lexeme
+ *   constant pool: count, then a tag and payload for every literal
+ *   program:       statement count, then the statements in pre-order
+ *
+ * A token is its type ordinal, the index of its lexeme in the string pool
+ * and its line as a zigzag delta from the previous token, which keeps the
+ * line table down to a byte per token. Every statement is followed by the
+ * line it starts on, coded the same way. Variable, Assign, This and Super
+ * carry the scope distance found by the Resolver plus one, zero meaning
+ * global. The cache is thrown away whenever the magic, version or source
+ * hash do not match, and treated as missing whenever it cannot be decoded,
+ * so a truncated or damaged file only costs a fresh parse.
+ */
+class AstCache {
+  private static final byte[] MAGIC = { 'L', 'O', 'X', 'C' };
+  private static final int VERSION = 3;
+
+  private static final byte NULL = 0;
+
+  private static final byte STMT_EXPRESSION = 1;
+  private static final byte STMT_FUNCTION = 2;
+  private static final byte STMT_IF = 3;
+  private static final byte STMT_BLOCK = 4;
+  private static final byte STMT_CLASS = 5;
+  private static final byte STMT_PRINT = 6;
+  private static final byte STMT_RETURN = 7;
+  private static final byte STMT_VAR = 8;
+  private static final byte STMT_WHILE = 9;
+
+  private static final byte EXPR_LITERAL = 1;
+  private static final byte EXPR_LOGICAL = 2;
+  private static final byte EXPR_SET = 3;
+  private static final byte EXPR_SUPER = 4;
+  private static final byte EXPR_THIS = 5;
+  private static final byte EXPR_UNARY = 6;
+  private static final byte EXPR_BINARY = 7;
+  private static final byte EXPR_GET = 8;
+  private static final byte EXPR_CALL = 9;
+  private static final byte EXPR_GROUPING = 10;
+  private static final byte EXPR_VARIABLE = 11;
+  private static final byte EXPR_ASSIGN = 12;
+  private static final byte EXPR_INDEX = 13;
+  private static final byte EXPR_SET_INDEX = 14;
+  private static final byte EXPR_ARRAY = 15;
+
+  private static final byte CONSTANT_NIL = 0;
+  private static final byte CONSTANT_FALSE = 1;
+  private static final byte CONSTANT_TRUE = 2;
+  private static final byte CONSTANT_NUMBER = 3;
+  private static final byte CONSTANT_STRING = 4;
+
+  private static final TokenType[] tokenTypes = TokenType.values();
+
+  private final Path path;
+  private final byte[] hash;
+
+  private AstCache(Path path, byte[] hash) {
+    this.path = path;
+    this.hash = hash;
+  }
+
+  static AstCache forScript(Path script, byte[] source) {
+    Path path = script.resolveSibling(script.getFileName() + ".cache");
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return new AstCache(path, digest.digest(source));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // Returns the cached program with its scope distances already handed to
+  // the interpreter, or null if there is no usable cache.
+  List<Stmt> load(Interpreter interpreter) {
+    try (FileChannel channel = FileChannel.open(path,
+                                                StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                      0, channel.size());
+      return new Reader(buffer, interpreter).readProgram(hash);
+    } catch (IOException | RuntimeException e) {
+      // Whatever a damaged file decodes to, from a buffer underflow to a
+      // wrong node type or a bad pool index.
+      return null;
+    }
+  }
+
+  // Best effort: a script in a read-only directory simply runs uncached.
+  void store(List<Stmt> statements, Interpreter interpreter) {
+    byte[] bytes;
+    try {
+      bytes = new Writer(interpreter).writeProgram(statements, hash);
+    } catch (Unparsed e) {
+      return;
+    }
+
+    Path temp = null;
+    try {
+      temp = Files.createTempFile(path.toAbsolutePath().getParent(),
+                                  path.getFileName().toString(), ".tmp");
+      Files.write(temp, bytes);
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      try {
+        if (temp != null) Files.deleteIfExists(temp);
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  // Thrown when the program still has lazily parsed function bodies, which
+  // have no tree to store yet.
+  private static class Unparsed extends RuntimeException {
+    Unparsed() {
+      super(null, null, false, false);
+    }
+  }
+
+  private static class Output {
+    private byte[] bytes = new byte[4096];
+    private int size = 0;
+
+    void writeByte(int value) {
+      if (size == bytes.length) bytes = Arrays.copyOf(bytes, size * 2);
+      bytes[size++] = (byte)value;
+    }
+
+    void writeBytes(byte[] values) {
+      if (size + values.length > bytes.length) {
+        bytes = Arrays.copyOf(bytes,
+            Math.max(bytes.length * 2, size + values.length));
+      }
+      System.arraycopy(values, 0, bytes, size, values.length);
+      size += values.length;
+    }
+
+    void writeVarint(int value) {
+      while ((value & ~0x7f) != 0) {
+        writeByte((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      writeByte(value);
+    }
+
+    void writeInt(int value) {
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        writeByte(value >>> shift);
+      }
+    }
+
+    void writeLong(long value) {
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        writeByte((int)(value >>> shift));
+      }
+    }
+
+    void writeTo(Output other) {
+      other.writeBytes(Arrays.copyOf(bytes, size));
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+  }
+
+  private static class Writer implements Expr.Visitor<Void>,
+                                         Stmt.Visitor<Void> {
+    private final Interpreter interpreter;
+    private final Output out = new Output();
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringPool = new ArrayList<>();
+    private final Map<Object, Integer> constants = new HashMap<>();
+    private final List<Object> constantPool = new ArrayList<>();
+    private int line = 0;
+
+    Writer(Interpreter interpreter) {
+      this.interpreter = interpreter;
+    }
+
+    byte[] writeProgram(List<Stmt> statements, byte[] hash) {
+      writeStatements(statements);
+
+      Output file = new Output();
+      file.writeBytes(MAGIC);
+      file.writeInt(VERSION);
+      file.writeBytes(hash);
+
+      file.writeVarint(stringPool.size());
+      for (String string : stringPool) {
+        byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+        file.writeVarint(utf8.length);
+        file.writeBytes(utf8);
+      }
+
+      file.writeVarint(constantPool.size());
+      for (Object constant : constantPool) {
+        if (constant == null) {
+          file.writeByte(CONSTANT_NIL);
+        } else if (constant instanceof Boolean bool) {
+          file.writeByte(bool ? CONSTANT_TRUE : CONSTANT_FALSE);
+        } else if (constant instanceof Double number) {
+          file.writeByte(CONSTANT_NUMBER);
+          file.writeLong(Double.doubleToRawLongBits(number));
+        } else {
+          file.writeByte(CONSTANT_STRING);
+          file.writeVarint(string((String)constant));
+        }
+      }
+
+      out.writeTo(file);
+      return file.toByteArray();
+    }
+
+    private int string(String value) {
+      Integer index = strings.get(value);
+      if (index == null) {
+        index = stringPool.size();
+        strings.put(value, index);
+        stringPool.add(value);
+      }
+
+      return index;
+    }
+
+    private int constant(Object value) {
+      Integer index = constants.get(value);
+      if (index == null) {
+        if (value instanceof String text) string(text);
+        index = constantPool.size();
+        constants.put(value, index);
+        constantPool.add(value);
+      }
+
+      return index;
+    }
+
+    private void writeToken(Token token) {
+      out.writeByte(token.type.ordinal());
+      out.writeVarint(string(token.lexeme));
+      writeLine(token.line);
+    }
+
+    private void writeLine(int next) {
+      int delta = next - line;
+      out.writeVarint((delta << 1) ^ (delta >> 31));
+      line = next;
+    }
+
+    private void writeTokens(List<Token> tokens) {
+      out.writeVarint(tokens.size());
+      for (Token token : tokens) writeToken(token);
+    }
+
+    private void writeDepth(Expr expr) {
+      Integer depth = interpreter.resolvedDepth(expr);
+      out.writeVarint(depth == null ? 0 : depth + 1);
+    }
+
+    private void writeStatements(List<Stmt> statements) {
+      if (statements instanceof LazyFunctionBody lazy && !lazy.isParsed()) {
+        throw new Unparsed();
+      }
+
+      out.writeVarint(statements.size());
+      for (Stmt statement : statements) writeStmt(statement);
+    }
+
+    private void writeStmt(Stmt stmt) {
+      if (stmt == null) {
+        out.writeByte(NULL);
+      } else {
+        stmt.accept(this);
+        writeLine(stmt.line);
+      }
+    }
+
+    private void writeExpr(Expr expr) {
+      if (expr == null) {
+        out.writeByte(NULL);
+      } else {
+        expr.accept(this);
+      }
+    }
+
+    private void writeFunction(Stmt.Function stmt) {
+      writeToken(stmt.name);
+      writeTokens(stmt.params);
+      writeStatements(stmt.body);
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+      out.writeByte(STMT_EXPRESSION);
+      writeExpr(stmt.expression);
+      return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+      out.writeByte(STMT_FUNCTION);
+      writeFunction(stmt);
+      return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+      out.writeByte(STMT_IF);
+      writeExpr(stmt.condition);
+      writeStmt(stmt.thenBranch);
+      writeStmt(stmt.elseBranch);
+      return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+      out.writeByte(STMT_BLOCK);
+      writeStatements(stmt.statements);
+      return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+      out.writeByte(STMT_CLASS);
+      writeToken(stmt.name);
+      writeExpr(stmt.superclass);
+      out.writeVarint(stmt.methods.size());
+      for (Stmt.Function method : stmt.methods) writeFunction(method);
+      return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+      out.writeByte(STMT_PRINT);
+      writeExpr(stmt.expression);
+      return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+      out.writeByte(STMT_RETURN);
+      writeToken(stmt.keyword);
+      writeExpr(stmt.value);
+      return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+      out.writeByte(STMT_VAR);
+      writeToken(stmt.name);
+      writeExpr(stmt.initializer);
+      return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+      out.writeByte(STMT_WHILE);
+      writeExpr(stmt.condition);
+      writeStmt(stmt.body);
+      return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+      out.writeByte(EXPR_LITERAL);
+      out.writeVarint(constant(expr.value));
+      return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+      out.writeByte(EXPR_LOGICAL);
+      writeExpr(expr.left);
+      writeToken(expr.operator);
+      writeExpr(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+      out.writeByte(EXPR_SET);
+      writeExpr(expr.object);
+      writeToken(expr.name);
+      writeExpr(expr.value);
+      return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+      out.writeByte(EXPR_SUPER);
+      writeToken(expr.keyword);
+      writeToken(expr.method);
+      writeDepth(expr);
+      return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+      out.writeByte(EXPR_THIS);
+      writeToken(expr.keyword);
+      writeDepth(expr);
+      return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+      out.writeByte(EXPR_UNARY);
+      writeToken(expr.operator);
+      writeExpr(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+      out.writeByte(EXPR_BINARY);
+      writeExpr(expr.left);
+      writeToken(expr.operator);
+      writeExpr(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+      out.writeByte(EXPR_GET);
+      writeExpr(expr.object);
+      writeToken(expr.name);
+      return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+      out.writeByte(EXPR_CALL);
+      writeExpr(expr.callee);
+      writeToken(expr.paren);
+      out.writeVarint(expr.arguments.size());
+      for (Expr argument : expr.arguments) writeExpr(argument);
+      return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+      out.writeByte(EXPR_GROUPING);
+      writeExpr(expr.expression);
+      return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+      out.writeByte(EXPR_VARIABLE);
+      writeToken(expr.name);
+      writeDepth(expr);
+      return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+      out.writeByte(EXPR_ASSIGN);
+      writeToken(expr.name);
+      writeExpr(expr.value);
+      writeDepth(expr);
+      return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+      out.writeByte(EXPR_INDEX);
+      writeExpr(expr.object);
+      writeToken(expr.bracket);
+      writeExpr(expr.index);
+      return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+      out.writeByte(EXPR_SET_INDEX);
+      writeExpr(expr.object);
+      writeToken(expr.bracket);
+      writeExpr(expr.index);
+      writeExpr(expr.value);
+      return null;
+    }
+
+    @Override
+    public Void visitArrayExpr(Expr.Array expr) {
+      out.writeByte(EXPR_ARRAY);
+      writeToken(expr.bracket);
+      out.writeVarint(expr.elements.size());
+      for (Expr element : expr.elements) writeExpr(element);
+      return null;
+    }
+  }
+
+  private static class Reader {
+    private final ByteBuffer in;
+    private final Interpreter interpreter;
+    private String[] strings;
+    private Object[] constants;
+    private int line = 0;
+
+    Reader(ByteBuffer in, Interpreter interpreter) {
+      this.in = in;
+      this.interpreter = interpreter;
+    }
+
+    List<Stmt> readProgram(byte[] hash) {
+      byte[] magic = new byte[MAGIC.length];
+      in.get(magic);
+      if (!Arrays.equals(magic, MAGIC)) return null;
+      if (in.getInt() != VERSION) return null;
+
+      byte[] stored = new byte[hash.length];
+      in.get(stored);
+      if (!Arrays.equals(stored, hash)) return null;
+
+      strings = new String[readCount()];
+      for (int i = 0; i < strings.length; i++) {
+        byte[] utf8 = new byte[readCount()];
+        in.get(utf8);
+        strings[i] = new String(utf8, StandardCharsets.UTF_8);
+      }
+
+      constants = new Object[readCount()];
+      for (int i = 0; i < constants.length; i++) {
+        constants[i] = switch (in.get()) {
+          case CONSTANT_NIL -> null;
+          case CONSTANT_FALSE -> false;
+          case CONSTANT_TRUE -> true;
+          case CONSTANT_NUMBER -> Double.longBitsToDouble(in.getLong());
+          case CONSTANT_STRING -> strings[readVarint()];
+          default -> throw new IndexOutOfBoundsException();
+        };
+      }
+
+      List<Stmt> statements = readStatements();
+      return in.hasRemaining() ? null : statements;
+    }
+
+    private int readVarint() {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        byte b = in.get();
+        value |= (b & 0x7f) << shift;
+        if (b >= 0) return value;
+      }
+
+      throw new IllegalStateException("Varint too long.");
+    }
+
+    // A length or element count, checked before anything is allocated
+    // for it: every element takes at least one byte.
+    private int readCount() {
+      int count = readVarint();
+      if (count < 0 || count > in.remaining()) {
+        throw new IllegalStateException("Bad count " + count + ".");
+      }
+
+      return count;
+    }
+
+    private Token readToken() {
+      TokenType type = tokenTypes[in.get()];
+      String lexeme = strings[readVarint()];
+      return new Token(type, lexeme, null, readLine());
+    }
+
+    private int readLine() {
+      int zigzag = readVarint();
+      line += (zigzag >>> 1) ^ -(zigzag & 1);
+      return line;
+    }
+
+    private List<Token> readTokens() {
+      int count = readCount();
+      List<Token> tokens = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) tokens.add(readToken());
+      return tokens;
+    }
+
+    private <T extends Expr> T readDepth(T expr) {
+      int depth = readVarint();
+      if (depth != 0) interpreter.resolve(expr, depth - 1);
+      return expr;
+    }
+
+    private List<Stmt> readStatements() {
+      int count = readCount();
+      List<Stmt> statements = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) statements.add(readStmt());
+      return statements;
+    }
+
+    private Stmt.Function readFunction() {
+      Token name = readToken();
+      List<Token> params = readTokens();
+      Stmt.Function function =
+          new Stmt.Function(name, params, readStatements());
+      function.line = name.line;
+      return function;
+    }
+
+    private Stmt readStmt() {
+      Stmt stmt = readNode();
+      if (stmt != null) stmt.line = readLine();
+      return stmt;
+    }
+
+    private Stmt readNode() {
+      return switch (in.get()) {
+        case NULL -> null;
+        case STMT_EXPRESSION -> new Stmt.Expression(readExpr());
+        case STMT_FUNCTION -> readFunction();
+        case STMT_IF -> {
+          Expr condition = readExpr();
+          Stmt thenBranch = readStmt();
+          yield new Stmt.If(condition, thenBranch, readStmt());
+        }
+        case STMT_BLOCK -> new Stmt.Block(readStatements());
+        case STMT_CLASS -> {
+          Token name = readToken();
+          Expr.Variable superclass = (Expr.Variable)readExpr();
+          int count = readCount();
+          List<Stmt.Function> methods = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) methods.add(readFunction());
+          yield new Stmt.Class(name, superclass, methods);
+        }
+        case STMT_PRINT -> new Stmt.Print(readExpr());
+        case STMT_RETURN -> {
+          Token keyword = readToken();
+          yield new Stmt.Return(keyword, readExpr());
+        }
+        case STMT_VAR -> {
+          Token name = readToken();
+          yield new Stmt.Var(name, readExpr());
+        }
+        case STMT_WHILE -> {
+          Expr condition = readExpr();
+          yield new Stmt.While(condition, readStmt());
+        }
+        default -> throw new IndexOutOfBoundsException();
+      };
+    }
+
+    private Expr readExpr() {
+      return switch (in.get()) {
+        case NULL -> null;
+        case EXPR_LITERAL -> new Expr.Literal(constants[readVarint()]);
+        case EXPR_LOGICAL -> {
+          Expr left = readExpr();
+          Token operator = readToken();
+          yield new Expr.Logical(left, operator, readExpr());
+        }
+        case EXPR_SET -> {
+          Expr object = readExpr();
+          Token name = readToken();
+          yield new Expr.Set(object, name, readExpr());
+        }
+        case EXPR_SUPER -> {
+          Token keyword = readToken();
+          yield readDepth(new Expr.Super(keyword, readToken()));
+        }
+        case EXPR_THIS -> readDepth(new Expr.This(readToken()));
+        case EXPR_UNARY -> {
+          Token operator = readToken();
+          yield new Expr.Unary(operator, readExpr());
+        }
+        case EXPR_BINARY -> {
+          Expr left = readExpr();
+          Token operator = readToken();
+          yield new Expr.Binary(left, operator, readExpr());
+        }
+        case EXPR_GET -> {
+          Expr object = readExpr();
+          yield new Expr.Get(object, readToken());
+        }
+        case EXPR_CALL -> {
+          Expr callee = readExpr();
+          Token paren = readToken();
+          int count = readCount();
+          List<Expr> arguments = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) arguments.add(readExpr());
+          yield new Expr.Call(callee, paren, arguments);
+        }
+        case EXPR_GROUPING -> new Expr.Grouping(readExpr());
+        case EXPR_VARIABLE -> readDepth(new Expr.Variable(readToken()));
+        case EXPR_ASSIGN -> {
+          Token name = readToken();
+          yield readDepth(new Expr.Assign(name, readExpr()));
+        }
+        case EXPR_INDEX -> {
+          Expr object = readExpr();
+          Token bracket = readToken();
+          yield new Expr.Index(object, bracket, readExpr());
+        }
+        case EXPR_SET_INDEX -> {
+          Expr object = readExpr();
+          Token bracket = readToken();
+          Expr index = readExpr();
+          yield new Expr.SetIndex(object, bracket, index, readExpr());
+        }
+        case EXPR_ARRAY -> {
+          Token bracket = readToken();
+          int count = readCount();
+          List<Expr> elements = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) elements.add(readExpr());
+          yield new Expr.Array(bracket, elements);
+        }
+        default -> throw new IndexOutOfBoundsException();
+      };
+    }
+  }
+}
@@ -275,4 +275,27 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
         return "";
     }
 
-}
\ No newline at end of file
+    @Override
+    public String visitIndexExpr(Expr.Index expr) {
+        return expr.object.accept(this) + "[" + expr.index.accept(this) + "]";
+    }
+
+    @Override
+    public String visitSetIndexExpr(Expr.SetIndex expr) {
+        return expr.object.accept(this) + "[" + expr.index.accept(this) +
+                "] = " + expr.value.accept(this);
+    }
+
+    @Override
+    public String visitArrayExpr(Expr.Array expr) {
+        var str = new StringBuilder("[");
+        for (int i = 0; i < expr.elements.size(); i++) {
+            if (i > 0) str.append(", ");
+            str.append(expr.elements.get(i).accept(this));
+        }
+        str.append("]");
+
+        return str.toString();
+    }
+
+}
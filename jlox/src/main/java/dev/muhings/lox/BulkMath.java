@@ -0,0 +1,326 @@
+package dev.muhings.lox;
+
+import java.nio.DoubleBuffer;
+import java.util.List;
+
+/**
+ * Natives that do arithmetic on whole number arrays and buffers at once,
+ * so a dot product is one native call instead of a Lox loop with a
+ * boxed value per step:
+ *
+ *   sum(x), min(x), max(x), dot(x, y)     return a number
+ *   add(x, y), multiply(x, y)             x[i] = x[i] + y[i], x[i] * y[i]
+ *   scale(x, k)                           x[i] = x[i] * k
+ *   fma(x, y, z)                          x[i] = y[i] * z[i] + x[i], fused
+ *
+ * The last four change x in place and return it, so they allocate
+ * nothing, which matters for buffers bigger than the heap. Operands must
+ * be arrays of numbers or buffers of the same length, in any mix.
+ *
+ * The work is split into runs that lie inside one array or one buffer
+ * segment and handed to a {@link Kernels}. The default kernels are plain
+ * loops: the elementwise ones are left for the JIT to vectorize, and the
+ * reductions keep four independent sums, since the JIT may not reorder
+ * floating-point additions itself. Sums are therefore added in a
+ * different order than a Lox loop would and can differ from it in the
+ * last bits. Started with -Djlox.vector=true and --add-modules
+ * jdk.incubator.vector, jlox uses {@link VectorKernels} instead.
+ */
+final class BulkMath {
+  private BulkMath() {}
+
+  // A stretch of numbers inside one array or one buffer segment.
+  abstract static class Run {
+    abstract double get(int i);
+    abstract void set(int i, double value);
+  }
+
+  static final class ArrayRun extends Run {
+    final double[] array;
+    final int offset;
+
+    ArrayRun(double[] array, int offset) {
+      this.array = array;
+      this.offset = offset;
+    }
+
+    @Override
+    double get(int i) {
+      return array[offset + i];
+    }
+
+    @Override
+    void set(int i, double value) {
+      array[offset + i] = value;
+    }
+  }
+
+  static final class BufferRun extends Run {
+    final DoubleBuffer buffer;
+    final int offset;
+
+    BufferRun(DoubleBuffer buffer, int offset) {
+      this.buffer = buffer;
+      this.offset = offset;
+    }
+
+    @Override
+    double get(int i) {
+      return buffer.get(offset + i);
+    }
+
+    @Override
+    void set(int i, double value) {
+      buffer.put(offset + i, value);
+    }
+  }
+
+  // The loops over one run of n numbers. x is the one that is written.
+  interface Kernels {
+    double sum(Run x, int n);
+    double min(Run x, int n);
+    double max(Run x, int n);
+    double dot(Run x, Run y, int n);
+    void add(Run x, Run y, int n);
+    void multiply(Run x, Run y, int n);
+    void scale(Run x, double factor, int n);
+    void fma(Run x, Run y, Run z, int n);
+  }
+
+  static final Kernels KERNELS = kernels();
+
+  private static Kernels kernels() {
+    if (!Boolean.getBoolean("jlox.vector")) return new Scalar();
+
+    // Loaded by name so the incubator module is only needed when asked
+    // for.
+    if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      try {
+        return (Kernels)Class.forName("dev.muhings.lox.VectorKernels")
+            .getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException | LinkageError e) {
+        // Fall through to the warning.
+      }
+    }
+
+    System.err.println("jlox.vector needs --add-modules " +
+                       "jdk.incubator.vector; using scalar loops.");
+    return new Scalar();
+  }
+
+  static void define(Environment globals) {
+    define(globals, "sum", 1, arguments -> {
+      double[] total = { 0 };
+      forRuns(operands(arguments, false), (runs, n) ->
+          total[0] += KERNELS.sum(runs[0], n));
+      return total[0];
+    });
+
+    define(globals, "min", 1, arguments -> {
+      double[] least = { Double.POSITIVE_INFINITY };
+      forRuns(nonEmpty(operands(arguments, false)), (runs, n) ->
+          least[0] = Math.min(least[0], KERNELS.min(runs[0], n)));
+      return least[0];
+    });
+
+    define(globals, "max", 1, arguments -> {
+      double[] most = { Double.NEGATIVE_INFINITY };
+      forRuns(nonEmpty(operands(arguments, false)), (runs, n) ->
+          most[0] = Math.max(most[0], KERNELS.max(runs[0], n)));
+      return most[0];
+    });
+
+    define(globals, "dot", 2, arguments -> {
+      double[] total = { 0 };
+      forRuns(operands(arguments, false), (runs, n) ->
+          total[0] += KERNELS.dot(runs[0], runs[1], n));
+      return total[0];
+    });
+
+    define(globals, "add", 2, arguments -> {
+      forRuns(operands(arguments, true), (runs, n) ->
+          KERNELS.add(runs[0], runs[1], n));
+      return arguments.get(0);
+    });
+
+    define(globals, "multiply", 2, arguments -> {
+      forRuns(operands(arguments, true), (runs, n) ->
+          KERNELS.multiply(runs[0], runs[1], n));
+      return arguments.get(0);
+    });
+
+    define(globals, "scale", 2, arguments -> {
+      double factor = NativeFunction.number(arguments.get(1), "Factor");
+      forRuns(operands(arguments.subList(0, 1), true), (runs, n) ->
+          KERNELS.scale(runs[0], factor, n));
+      return arguments.get(0);
+    });
+
+    define(globals, "fma", 3, arguments -> {
+      forRuns(operands(arguments, true), (runs, n) ->
+          KERNELS.fma(runs[0], runs[1], runs[2], n));
+      return arguments.get(0);
+    });
+  }
+
+  private interface Body {
+    Object call(List<Object> arguments);
+  }
+
+  private static void define(Environment globals, String name, int arity,
+                             Body body) {
+    globals.define(name, new NativeFunction(name, arity,
+        (interpreter, arguments) -> body.call(arguments)));
+  }
+
+  private interface Step {
+    void run(Run[] runs, int n);
+  }
+
+  // Checks that the arguments are arrays of numbers or buffers of one
+  // length, the first one writable if asked.
+  private static Object[] operands(List<Object> arguments,
+                                   boolean writesFirst) {
+    Object[] operands = arguments.toArray();
+    long length = -1;
+    for (int i = 0; i < operands.length; i++) {
+      long operandLength;
+      if (operands[i] instanceof LoxArray array && array.isNumeric()) {
+        operandLength = array.length();
+      } else if (operands[i] instanceof LoxBuffer buffer) {
+        if (i == 0 && writesFirst && buffer.isReadOnly()) {
+          throw new NativeError("Buffer is read-only.");
+        }
+        operandLength = buffer.length();
+      } else {
+        throw new NativeError(
+            "Operands must be arrays of numbers or buffers.");
+      }
+
+      if (length >= 0 && operandLength != length) {
+        throw new NativeError("Operands must have the same " +
+            "length, not " + length + " and " + operandLength + ".");
+      }
+      length = operandLength;
+    }
+
+    return operands;
+  }
+
+  private static Object[] nonEmpty(Object[] operands) {
+    if (length(operands[0]) == 0) {
+      throw new NativeError("Operand must not be empty.");
+    }
+    return operands;
+  }
+
+  // Calls the step on the longest runs that do not cross the end of a
+  // buffer segment in any operand.
+  private static void forRuns(Object[] operands, Step step) {
+    long length = length(operands[0]);
+    Run[] runs = new Run[operands.length];
+    for (long position = 0; position < length; ) {
+      long n = length - position;
+      for (int i = 0; i < operands.length; i++) {
+        if (operands[i] instanceof LoxArray array) {
+          runs[i] = new ArrayRun(array.numbers(), (int)position);
+        } else {
+          LoxBuffer buffer = (LoxBuffer)operands[i];
+          int offset = (int)(position & (LoxBuffer.SEGMENT_SIZE - 1));
+          runs[i] = new BufferRun(
+              buffer.segment((int)(position >>> LoxBuffer.SEGMENT_BITS)),
+              offset);
+          n = Math.min(n, LoxBuffer.SEGMENT_SIZE - offset);
+        }
+      }
+
+      step.run(runs, (int)n);
+      position += n;
+    }
+  }
+
+  private static long length(Object operand) {
+    return operand instanceof LoxArray array ?
+        array.length() : ((LoxBuffer)operand).length();
+  }
+
+  static final class Scalar implements Kernels {
+    @Override
+    public double sum(Run x, int n) {
+      double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+      int i = 0;
+      for (; i + 3 < n; i += 4) {
+        s0 += x.get(i);
+        s1 += x.get(i + 1);
+        s2 += x.get(i + 2);
+        s3 += x.get(i + 3);
+      }
+      for (; i < n; i++) s0 += x.get(i);
+      return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public double min(Run x, int n) {
+      double m0 = Double.POSITIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+      int i = 0;
+      for (; i + 3 < n; i += 4) {
+        m0 = Math.min(m0, x.get(i));
+        m1 = Math.min(m1, x.get(i + 1));
+        m2 = Math.min(m2, x.get(i + 2));
+        m3 = Math.min(m3, x.get(i + 3));
+      }
+      for (; i < n; i++) m0 = Math.min(m0, x.get(i));
+      return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+    }
+
+    @Override
+    public double max(Run x, int n) {
+      double m0 = Double.NEGATIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+      int i = 0;
+      for (; i + 3 < n; i += 4) {
+        m0 = Math.max(m0, x.get(i));
+        m1 = Math.max(m1, x.get(i + 1));
+        m2 = Math.max(m2, x.get(i + 2));
+        m3 = Math.max(m3, x.get(i + 3));
+      }
+      for (; i < n; i++) m0 = Math.max(m0, x.get(i));
+      return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+    }
+
+    @Override
+    public double dot(Run x, Run y, int n) {
+      double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+      int i = 0;
+      for (; i + 3 < n; i += 4) {
+        s0 += x.get(i) * y.get(i);
+        s1 += x.get(i + 1) * y.get(i + 1);
+        s2 += x.get(i + 2) * y.get(i + 2);
+        s3 += x.get(i + 3) * y.get(i + 3);
+      }
+      for (; i < n; i++) s0 += x.get(i) * y.get(i);
+      return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public void add(Run x, Run y, int n) {
+      for (int i = 0; i < n; i++) x.set(i, x.get(i) + y.get(i));
+    }
+
+    @Override
+    public void multiply(Run x, Run y, int n) {
+      for (int i = 0; i < n; i++) x.set(i, x.get(i) * y.get(i));
+    }
+
+    @Override
+    public void scale(Run x, double factor, int n) {
+      for (int i = 0; i < n; i++) x.set(i, x.get(i) * factor);
+    }
+
+    @Override
+    public void fma(Run x, Run y, Run z, int n) {
+      for (int i = 0; i < n; i++) {
+        x.set(i, Math.fma(y.get(i), z.get(i), x.get(i)));
+      }
+    }
+  }
+}
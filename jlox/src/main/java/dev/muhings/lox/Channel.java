@@ -0,0 +1,112 @@
+package dev.muhings.lox;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue between tasks, made by channel(capacity). send() waits
+ * while the channel is full and receive() while it is empty, so a fast
+ * producer cannot run ahead of its consumers by more than the capacity.
+ * Everything a task did before sending a value happens before the task
+ * that receives it goes on.
+ *
+ * close() stops further sends. Receivers still get the values already
+ * in the channel, then nil, which ends a "while" loop over receive() as
+ * long as nobody sends nil itself.
+ *
+ * The waiting uses a ReentrantLock rather than monitors, so a virtual
+ * thread waiting on a channel gives its carrier thread back.
+ */
+final class Channel implements NativeObject {
+  private final Object[] buffer;
+  private int head = 0;
+  private int count = 0;
+  private boolean closed = false;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+
+  Channel(int capacity) {
+    this.buffer = new Object[capacity];
+  }
+
+  void send(Object value) {
+    lock.lock();
+    try {
+      while (count == buffer.length && !closed) await(notFull);
+      if (closed) throw new NativeError("Send on a closed channel.");
+
+      buffer[(head + count) % buffer.length] = value;
+      count++;
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  Object receive() {
+    lock.lock();
+    try {
+      while (count == 0 && !closed) await(notEmpty);
+      if (count == 0) return null;
+
+      Object value = buffer[head];
+      buffer[head] = null;
+      head = (head + 1) % buffer.length;
+      count--;
+      notFull.signal();
+      return value;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void close() {
+    lock.lock();
+    try {
+      closed = true;
+      notEmpty.signalAll();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static void await(Condition condition) {
+    try {
+      condition.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new NativeError("Interrupted while waiting on a channel.");
+    }
+  }
+
+  private static final NativeMethod<Channel> SEND = new NativeMethod<>(
+      "send", 1, (channel, interpreter, arguments) -> {
+        channel.send(arguments.get(0));
+        return null;
+      });
+  private static final NativeMethod<Channel> RECEIVE = new NativeMethod<>(
+      "receive", 0, (channel, interpreter, arguments) -> channel.receive());
+  private static final NativeMethod<Channel> CLOSE = new NativeMethod<>(
+      "close", 0, (channel, interpreter, arguments) -> {
+        channel.close();
+        return null;
+      });
+
+  @Override
+  public NativeMethod<?> method(String name) {
+    return switch (name) {
+      case "send" -> SEND;
+      case "receive" -> RECEIVE;
+      case "close" -> CLOSE;
+      default -> null;
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "<channel>";
+  }
+}
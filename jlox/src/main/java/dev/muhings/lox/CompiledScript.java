@@ -0,0 +1,55 @@
+package dev.muhings.lox;
+
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * A parsed and resolved Lox program, made by {@link LoxEngine#compile}.
+ * It never changes after compiling, so any number of threads can run it
+ * at once; each run starts from fresh globals. The AST is shared, so the
+ * --hotspots counters of the command line are not available here.
+ */
+public final class CompiledScript {
+  private final List<Stmt> statements;
+
+  CompiledScript(List<Stmt> statements) {
+    this.statements = List.copyOf(statements);
+  }
+
+  public void run() throws LoxException {
+    run(System.out);
+  }
+
+  public void run(PrintStream out) throws LoxException {
+    run(new OutputStreamWriter(out));
+  }
+
+  // Output is buffered and reaches the writer when the buffer fills and
+  // when the script is done.
+  public void run(Writer out) throws LoxException {
+    OutputSink sink = new OutputSink(out, OutputSink.Flush.FULL);
+    try {
+      run(newInterpreter(sink));
+    } finally {
+      sink.close();
+    }
+  }
+
+  Interpreter newInterpreter(OutputSink out) {
+    return new Interpreter(out);
+  }
+
+  // Runs the program in an interpreter made by newInterpreter, whose
+  // globals then hold what the script defined.
+  void run(Interpreter interpreter) throws LoxException {
+    try {
+      interpreter.execute(statements);
+    } catch (RuntimeError error) {
+      LoxMetrics.runtimeError();
+      LoxEvents.runtimeError(error);
+      throw new LoxException(List.of(Diagnostic.runtime(error)));
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package dev.muhings.lox;
+
+/**
+ * An error found while compiling or running a script. Its string form is
+ * what the jlox command line prints for the same error.
+ */
+public record Diagnostic(Kind kind, int line, String where, String message) {
+  public enum Kind {
+    /** Found by the scanner, parser or resolver; the script did not run. */
+    COMPILE,
+    /** Stopped the script while it was running. */
+    RUNTIME
+  }
+
+  static Diagnostic runtime(RuntimeError error) {
+    return new Diagnostic(Kind.RUNTIME, error.token.line, "",
+                          error.getMessage());
+  }
+
+  @Override
+  public String toString() {
+    if (kind == Kind.RUNTIME) return message + "\n[line " + line + "]";
+    return "[line " + line + "] Error" + where + ": " + message;
+  }
+}
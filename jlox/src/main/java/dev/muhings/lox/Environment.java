@@ -1,29 +1,82 @@
 package dev.muhings.lox;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.HashMap;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The variables of one scope, in a HashMap as long as the program runs on
+ * one thread.
+ *
+ * Tasks started with spawn(), parallelFor() and parallelMap() share the
+ * environments their functions close over and the instances they reach.
+ * Before the first of them starts, the thread that starts it calls
+ * {@link #share()}. From then on every environment and instance moves
+ * its map into a ConcurrentHashMap the first time it is used, under its
+ * own lock, and publishes it with a release write that readers pair with
+ * an acquire read. Everything written before share() happens-before the
+ * task starts, and every later access goes through the concurrent map,
+ * so every read and write of a variable or field is atomic, and a read
+ * sees the latest write that finished before it, on any thread. A read
+ * followed by a write, as in "count = count + 1", is not atomic; tasks
+ * that need that should go through a channel.
+ *
+ * The switch is for the whole JVM and for good: once any program has
+ * started a task, programs that run later pay for the concurrent maps
+ * too. Single-threaded programs only pay for reading the flag.
+ *
+ * ConcurrentHashMap has no null values, so nil is stored as {@link #NIL}
+ * in both kinds of map.
+ */
 public class Environment {
+	static final Object NIL = new Object();
+
+	// Set when the first task starts; never cleared.
+	private static volatile boolean shared = false;
+
+	private static final VarHandle VALUES;
+
+	static {
+    try {
+      VALUES = MethodHandles.lookup().findVarHandle(
+          Environment.class, "values", Map.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
 	final Environment enclosing;
 
-	private final Map<String, Object> values = new HashMap<>();
+	private Map<String, Object> values = new HashMap<>();
 
 	Environment() {
     enclosing = null;
+    LoxMetrics.environmentAllocated();
   }
 
   Environment(Environment enclosing) {
     this.enclosing = enclosing;
+    LoxMetrics.environmentAllocated();
+  }
+
+	// Called on the thread that starts a task, before it starts.
+	static void share() {
+    shared = true;
+  }
+
+	static boolean isShared() {
+    return shared;
   }
 
 	void define(String name, Object value) {
-    values.put(name, value);
+    map().put(name, wrap(value));
   }
 
 	Object get(Token name) {
-    if (values.containsKey(name.lexeme)) {
-      return values.get(name.lexeme);
-    }
+    Object value = map().get(name.lexeme);
+    if (value != null) return unwrap(value);
 
 		if (enclosing != null) return enclosing.get(name);
 
@@ -32,10 +85,7 @@ public class Environment {
   }
 
 	void assign(Token name, Object value) {
-    if (values.containsKey(name.lexeme)) {
-      values.put(name.lexeme, value);
-      return;
-    }
+    if (map().replace(name.lexeme, wrap(value)) != null) return;
 
 		if (enclosing != null) {
       enclosing.assign(name, value);
@@ -47,11 +97,40 @@ public class Environment {
   }
 
 	Object getAt(int distance, String name) {
-    return ancestor(distance).values.get(name);
+    return unwrap(ancestor(distance).map().get(name));
   }
 
 	void assignAt(int distance, Token name, Object value) {
-    ancestor(distance).values.put(name.lexeme, value);
+    ancestor(distance).map().put(name.lexeme, wrap(value));
+  }
+
+	// The variables as stored, with nil as NIL.
+	Map<String, Object> values() {
+    return map();
+  }
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> map() {
+    if (!shared) return values;
+
+    Map<String, Object> map = (Map<String, Object>)VALUES.getAcquire(this);
+    return map instanceof ConcurrentHashMap ? map : concurrentMap();
+  }
+
+	private synchronized Map<String, Object> concurrentMap() {
+    if (!(values instanceof ConcurrentHashMap)) {
+      VALUES.setRelease(this, new ConcurrentHashMap<>(values));
+    }
+
+    return values;
+  }
+
+	static Object wrap(Object value) {
+    return value == null ? NIL : value;
+  }
+
+	static Object unwrap(Object value) {
+    return value == NIL ? null : value;
   }
 
 	Environment ancestor(int distance) {
@@ -0,0 +1,23 @@
+package dev.muhings.lox;
+
+/**
+ * Receives the compile errors found by the {@link Scanner} and the
+ * {@link Parser}. The command line uses {@link Lox#report}, which prints
+ * straight away; the parallel front end buffers errors per segment and
+ * replays them in source order once every segment is done.
+ */
+interface ErrorReporter {
+  void report(int line, String where, String message);
+
+  default void error(int line, String message) {
+    report(line, "", message);
+  }
+
+  default void error(Token token, String message) {
+    if (token.type == TokenType.EOF) {
+      report(token.line, " at end", message);
+    } else {
+      report(token.line, " at '" + token.lexeme + "'", message);
+    }
+  }
+}
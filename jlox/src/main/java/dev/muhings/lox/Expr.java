@@ -30,10 +30,19 @@ abstract class Expr {
 
     R visitAssignExpr(Assign expr);
 
+    R visitIndexExpr(Index expr);
+
+    R visitSetIndexExpr(SetIndex expr);
+
+    R visitArrayExpr(Array expr);
+
   }
 
   abstract <R> R accept(Visitor<R> visitor);
 
+  long executions;
+  int depth = -1;
+
   static class Literal extends Expr {
     Literal(Object value) {
       this.value = value;
@@ -214,4 +223,55 @@ abstract class Expr {
     final Expr value;
   }
 
+  static class Index extends Expr {
+    Index(Expr object, Token bracket, Expr index) {
+      this.object = object;
+      this.bracket = bracket;
+      this.index = index;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitIndexExpr(this);
+    }
+
+    final Expr object;
+    final Token bracket;
+    final Expr index;
+  }
+
+  static class SetIndex extends Expr {
+    SetIndex(Expr object, Token bracket, Expr index, Expr value) {
+      this.object = object;
+      this.bracket = bracket;
+      this.index = index;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSetIndexExpr(this);
+    }
+
+    final Expr object;
+    final Token bracket;
+    final Expr index;
+    final Expr value;
+  }
+
+  static class Array extends Expr {
+    Array(Token bracket, List<Expr> elements) {
+      this.bracket = bracket;
+      this.elements = elements;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitArrayExpr(this);
+    }
+
+    final Token bracket;
+    final List<Expr> elements;
+  }
+
 }
\ No newline at end of file
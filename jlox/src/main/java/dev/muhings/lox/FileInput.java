@@ -0,0 +1,205 @@
+package dev.muhings.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A UTF-8 file read a piece at a time, made by openLines(path) or
+ * openChunks(path, bytes). next() returns the next line, without its
+ * "\n" or "\r\n", or the next chunk of at most that many bytes, cut so
+ * no character is split (a chunk too short for a character holds that
+ * one character); at the end of the file it returns nil and closes the
+ * file. close() stops early.
+ *
+ * The file is mapped a window of 16 MB at a time and searched in place,
+ * so only the window and the current line are held in memory however
+ * big the file is, and nothing is copied twice on the way to the Lox
+ * string. A reader belongs to one task at a time.
+ */
+final class FileInput implements NativeObject {
+  private static final int WINDOW = 16 << 20;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final long size;
+  // Zero reads lines.
+  private final int chunkSize;
+  private final int windowSize;
+  private MappedByteBuffer window = null;
+  private long windowStart = 0;
+  private long position = 0;
+  private boolean closed = false;
+
+  private FileInput(Path path, FileChannel channel, int chunkSize,
+                    int windowSize) throws IOException {
+    this.path = path;
+    this.channel = channel;
+    this.size = channel.size();
+    this.chunkSize = chunkSize;
+    this.windowSize = windowSize;
+  }
+
+  static FileInput open(Path path, int chunkSize) {
+    return open(path, chunkSize, WINDOW);
+  }
+
+  // Tests use windows of a few bytes to reach the window edges.
+  static FileInput open(Path path, int chunkSize, int windowSize) {
+    try {
+      return new FileInput(path,
+          FileChannel.open(path, StandardOpenOption.READ), chunkSize,
+          windowSize);
+    } catch (NoSuchFileException e) {
+      throw new NativeError("No such file '" + path + "'.");
+    } catch (IOException e) {
+      throw new NativeError("Could not open '" + path + "': " +
+                                     e.getMessage());
+    }
+  }
+
+  String next() {
+    if (closed) throw new NativeError("File is closed.");
+    if (position >= size) {
+      close();
+      return null;
+    }
+
+    try {
+      return chunkSize == 0 ? nextLine() : nextChunk();
+    } catch (IOException e) {
+      throw new NativeError("Could not read '" + path + "': " +
+                                     e.getMessage());
+    }
+  }
+
+  private String nextLine() throws IOException {
+    ByteArrayOutputStream longLine = null;
+    while (true) {
+      map(position);
+      int start = (int)(position - windowStart);
+      int limit = window.limit();
+      int end = start;
+      while (end < limit && window.get(end) != '\n') end++;
+
+      if (end < limit || windowStart + limit == size) {
+        // The line ends in this window, at a newline or the end of file.
+        position = windowStart + Math.min(end + 1, limit);
+        byte[] bytes = bytes(start, end);
+        if (longLine != null) {
+          longLine.write(bytes);
+          bytes = longLine.toByteArray();
+        }
+        return decodeLine(bytes);
+      }
+
+      if (start > 0) {
+        // Slide the window up to the line and look again.
+        map(position, true);
+        continue;
+      }
+
+      // A line longer than a whole window.
+      if (longLine == null) longLine = new ByteArrayOutputStream();
+      longLine.write(bytes(start, limit));
+      position = windowStart + limit;
+    }
+  }
+
+  private String nextChunk() throws IOException {
+    // A character is read whole even when the chunk is shorter.
+    int wanted = Math.max(chunkSize, 4);
+    map(position);
+    int start = (int)(position - windowStart);
+    if (window.limit() - start < wanted &&
+        windowStart + window.limit() < size) {
+      map(position, true);
+      start = 0;
+    }
+
+    int end = Math.min(window.limit(), start + chunkSize);
+    if (windowStart + end < size) {
+      // Leave a character whose bytes run past the chunk for the next one.
+      int lead = end - 1;
+      while (lead > start && end - lead < 4 &&
+             (window.get(lead) & 0xC0) == 0x80) {
+        lead--;
+      }
+      int first = window.get(lead) & 0xFF;
+      int length = first >= 0xF0 ? 4 : first >= 0xE0 ? 3 :
+                   first >= 0xC0 ? 2 : 1;
+      if (lead + length > end) {
+        end = lead > start ? lead : Math.min(window.limit(), lead + length);
+      }
+    }
+
+    position = windowStart + end;
+    return new String(bytes(start, end), StandardCharsets.UTF_8);
+  }
+
+  private void map(long at) throws IOException {
+    map(at, false);
+  }
+
+  // Maps the window holding the byte at this offset, or starting at it.
+  private void map(long at, boolean startHere) throws IOException {
+    if (!startHere && window != null && at >= windowStart &&
+        at < windowStart + window.limit()) {
+      return;
+    }
+
+    windowStart = at;
+    window = channel.map(FileChannel.MapMode.READ_ONLY, at,
+                         Math.min(windowSize, size - at));
+  }
+
+  private byte[] bytes(int start, int end) {
+    byte[] bytes = new byte[end - start];
+    window.get(start, bytes);
+    return bytes;
+  }
+
+  private static String decodeLine(byte[] bytes) {
+    int length = bytes.length;
+    if (length > 0 && bytes[length - 1] == '\r') length--;
+    return new String(bytes, 0, length, StandardCharsets.UTF_8);
+  }
+
+  void close() {
+    if (closed) return;
+    closed = true;
+    window = null;
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // Nothing was written, so there is nothing to lose.
+    }
+  }
+
+  private static final NativeMethod<FileInput> NEXT = new NativeMethod<>(
+      "next", 0, (input, interpreter, arguments) -> input.next());
+  private static final NativeMethod<FileInput> CLOSE = new NativeMethod<>(
+      "close", 0, (input, interpreter, arguments) -> {
+        input.close();
+        return null;
+      });
+
+  @Override
+  public NativeMethod<?> method(String name) {
+    return switch (name) {
+      case "next" -> NEXT;
+      case "close" -> CLOSE;
+      default -> null;
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "<file " + path + ">";
+  }
+}
@@ -0,0 +1,131 @@
+package dev.muhings.lox;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A UTF-8 file written through a 64 KB buffer, made by openWriter(path),
+ * which creates the file or empties it. write(value) and writeLine(value)
+ * write values the way print shows them; flush() pushes the buffer to
+ * the file and close() finishes it. Files still open when the JVM exits
+ * are flushed then, so a script that forgets close() loses nothing.
+ * Tasks can share a writer; every write comes out whole.
+ */
+final class FileOutput implements NativeObject {
+  private static final int BUFFER = 64 << 10;
+
+  private static final Set<FileOutput> open =
+      Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      for (FileOutput output : open) {
+        try {
+          output.close();
+        } catch (NativeError e) {
+          System.err.println(e.getMessage());
+        }
+      }
+    }, "lox-file-flush"));
+  }
+
+  private final Path path;
+  private final BufferedWriter writer;
+  private boolean closed = false;
+
+  private FileOutput(Path path, BufferedWriter writer) {
+    this.path = path;
+    this.writer = writer;
+  }
+
+  static FileOutput open(Path path) {
+    try {
+      FileOutput output = new FileOutput(path, new BufferedWriter(
+          new OutputStreamWriter(Files.newOutputStream(path),
+                                 StandardCharsets.UTF_8), BUFFER));
+      open.add(output);
+      return output;
+    } catch (IOException e) {
+      throw new NativeError("Could not open '" + path +
+                                     "' for writing: " + e.getMessage());
+    }
+  }
+
+  synchronized void write(String text) {
+    if (closed) throw new NativeError("File is closed.");
+    try {
+      writer.write(text);
+    } catch (IOException e) {
+      throw failed(e);
+    }
+  }
+
+  synchronized void flush() {
+    if (closed) return;
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw failed(e);
+    }
+  }
+
+  synchronized void close() {
+    if (closed) return;
+    closed = true;
+    open.remove(this);
+    try {
+      writer.close();
+    } catch (IOException e) {
+      throw failed(e);
+    }
+  }
+
+  private NativeError failed(IOException e) {
+    return new NativeError("Could not write '" + path + "': " +
+                                    e.getMessage());
+  }
+
+  private static final NativeMethod<FileOutput> WRITE = new NativeMethod<>(
+      "write", 1, (output, interpreter, arguments) -> {
+        output.write(Interpreter.stringify(arguments.get(0)));
+        return null;
+      });
+  private static final NativeMethod<FileOutput> WRITE_LINE =
+      new NativeMethod<>("writeLine", 1, (output, interpreter, arguments) -> {
+        output.write(Interpreter.stringify(arguments.get(0)) + "\n");
+        return null;
+      });
+  private static final NativeMethod<FileOutput> FLUSH = new NativeMethod<>(
+      "flush", 0, (output, interpreter, arguments) -> {
+        output.flush();
+        return null;
+      });
+  private static final NativeMethod<FileOutput> CLOSE = new NativeMethod<>(
+      "close", 0, (output, interpreter, arguments) -> {
+        output.close();
+        return null;
+      });
+
+  @Override
+  public NativeMethod<?> method(String name) {
+    return switch (name) {
+      case "write" -> WRITE;
+      case "writeLine" -> WRITE_LINE;
+      case "flush" -> FLUSH;
+      case "close" -> CLOSE;
+      default -> null;
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "<file " + path + ">";
+  }
+}
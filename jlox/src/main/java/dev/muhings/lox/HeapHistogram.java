@@ -0,0 +1,169 @@
+package dev.muhings.lox;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Accounts the live Lox heap by class. A Java heap dump of a Lox program
+ * only shows LoxInstance and HashMap nodes; this walks the Lox object
+ * graph instead, starting from the globals and the environment the
+ * interpreter is running in, and charges everything it finds to the
+ * class of the nearest instance that holds it. Environments, closures,
+ * arrays and maps reached without going through an instance are charged to
+ * "(no class)".
+ *
+ * Sizes are estimates for a 64-bit JVM with compressed references, which
+ * is close enough to find the class that is eating the heap. Locals of
+ * callers further down the stack are only seen if a closure captured
+ * them.
+ */
+class HeapHistogram {
+  private static final String NO_CLASS = "(no class)";
+
+  private static class Row {
+    final String name;
+    long allocated = 0;
+    long live = 0;
+    long shallowBytes = 0;
+    long retainedBytes = 0;
+    long environments = 0;
+    long closures = 0;
+
+    Row(String name) {
+      this.name = name;
+    }
+  }
+
+  private record Reference(Object object, LoxClass owner) {}
+
+  private final Set<Object> visited =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+  private final Map<LoxClass, Row> classes = new LinkedHashMap<>();
+  private final Row unowned = new Row(NO_CLASS);
+  private final Deque<Reference> pending = new ArrayDeque<>();
+
+  static void print(Interpreter interpreter, PrintWriter out) {
+    HeapHistogram histogram = new HeapHistogram();
+    histogram.walk(interpreter.globals);
+    histogram.walk(interpreter.currentEnvironment());
+    histogram.print(out);
+    out.flush();
+  }
+
+  private void walk(Environment root) {
+    pending.push(new Reference(root, null));
+    while (!pending.isEmpty()) {
+      Reference reference = pending.pop();
+      if (visited.add(reference.object())) {
+        visit(reference.object(), reference.owner());
+      }
+    }
+  }
+
+  private void visit(Object object, LoxClass owner) {
+    if (object instanceof LoxInstance instance) {
+      LoxClass klass = instance.klass();
+      Row row = row(klass);
+      long bytes = align(16) + mapBytes(instance.fields().size());
+      row.live++;
+      row.shallowBytes += bytes;
+      row.retainedBytes += bytes;
+      reach(klass, null);
+      for (Object value : instance.fields().values()) reach(value, klass);
+    } else if (object instanceof Environment environment) {
+      Row row = row(owner);
+      row.environments++;
+      row.retainedBytes += align(20) + mapBytes(environment.values().size());
+      reach(environment.enclosing, owner);
+      for (Object value : environment.values().values()) reach(value, owner);
+    } else if (object instanceof LoxClass klass) {
+      row(klass);
+      reach(klass.superclass, null);
+      for (LoxFunction method : klass.methods()) reach(method, null);
+    } else if (object instanceof LoxFunction function) {
+      Row row = row(owner);
+      row.closures++;
+      row.retainedBytes += align(21);
+      reach(function.closure(), owner);
+    } else if (object instanceof LoxArray array) {
+      // Number arrays hold their elements unboxed.
+      long elementBytes = array.isNumeric() ? 8 : 4;
+      row(owner).retainedBytes +=
+          align(24) + align(16 + elementBytes * array.capacity());
+      if (!array.isNumeric()) {
+        for (int i = 0; i < array.length(); i++) reach(array.get(i), owner);
+      }
+    } else if (object instanceof LoxMap map) {
+      row(owner).retainedBytes += align(24) + align(16 + 8L * map.capacity());
+      for (Object item : map.table()) reach(item, owner);
+    } else if (object instanceof String string) {
+      row(owner).retainedBytes += align(24) + align(16 + string.length());
+    } else if (object instanceof Double) {
+      row(owner).retainedBytes += align(16);
+    }
+  }
+
+  private void reach(Object object, LoxClass owner) {
+    if (object != null && !visited.contains(object)) {
+      pending.push(new Reference(object, owner));
+    }
+  }
+
+  private Row row(LoxClass klass) {
+    if (klass == null) return unowned;
+
+    return classes.computeIfAbsent(klass, k -> {
+      Row row = new Row(k.name);
+      row.allocated = k.instancesCreated.sum();
+      return row;
+    });
+  }
+
+  private void print(PrintWriter out) {
+    List<Row> rows = new ArrayList<>(classes.values());
+    rows.add(unowned);
+    rows.sort((a, b) -> Long.compare(b.retainedBytes, a.retainedBytes));
+
+    Row total = new Row("total");
+    for (Row row : rows) {
+      total.allocated += row.allocated;
+      total.live += row.live;
+      total.shallowBytes += row.shallowBytes;
+      total.retainedBytes += row.retainedBytes;
+      total.environments += row.environments;
+      total.closures += row.closures;
+    }
+
+    out.println("Lox heap histogram (estimated sizes):");
+    out.printf("%12s %10s %12s %14s %12s %10s  %s%n", "allocated", "live",
+               "shallow", "retained", "environments", "closures", "class");
+    for (Row row : rows) printRow(out, row);
+    printRow(out, total);
+  }
+
+  private static void printRow(PrintWriter out, Row row) {
+    out.printf("%12d %10d %12d %14d %12d %10d  %s%n", row.allocated,
+               row.live, row.shallowBytes, row.retainedBytes,
+               row.environments, row.closures, row.name);
+  }
+
+  // A ConcurrentHashMap with its table and one node per entry.
+  private static long mapBytes(int size) {
+    if (size == 0) return align(64);
+
+    int capacity = Integer.highestOneBit(Math.max(16, size * 4 / 3) - 1) * 2;
+    return align(64) + align(16 + 4L * capacity) + align(32) * size;
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+}
@@ -0,0 +1,240 @@
+package dev.muhings.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Prints a script annotated with what the instrumented interpreter
+ * counted on its nodes: for every line, how often its statements ran,
+ * how many expressions they evaluated and the self time of those
+ * statements, followed by the hottest lines. A line holding several
+ * statements, like the header of a for loop, shows the count of the one
+ * that ran most often. Function bodies a lazy parse never reached are
+ * skipped.
+ */
+class HotspotReport implements Stmt.Visitor<Void>, Expr.Visitor<Long> {
+  private static final int HOTTEST_LINES = 10;
+
+  private static class Line {
+    final int number;
+    long executions = 0;
+    long evaluations = 0;
+    long selfNanos = 0;
+
+    Line(int number) {
+      this.number = number;
+    }
+  }
+
+  private final Map<Integer, Line> lines = new TreeMap<>();
+
+  static void print(List<Stmt> statements, String source, PrintStream out) {
+    HotspotReport report = new HotspotReport();
+    report.count(statements);
+    report.print(source.split("\r?\n", -1), out);
+  }
+
+  private void count(List<Stmt> statements) {
+    if (statements instanceof LazyFunctionBody body && !body.isParsed()) {
+      return;
+    }
+
+    for (Stmt statement : statements) {
+      if (statement != null) count(statement);
+    }
+  }
+
+  private void count(Stmt stmt) {
+    Line line = lines.computeIfAbsent(stmt.line, Line::new);
+    line.executions = Math.max(line.executions, stmt.executions);
+    line.selfNanos += stmt.selfNanos;
+    stmt.accept(this);
+  }
+
+  private void evaluated(Stmt stmt, Expr... exprs) {
+    Line line = lines.get(stmt.line);
+    for (Expr expr : exprs) {
+      if (expr != null) line.evaluations += expr.accept(this);
+    }
+  }
+
+  private void print(String[] source, PrintStream out) {
+    long totalNanos = 0;
+    for (Line line : lines.values()) totalNanos += line.selfNanos;
+
+    out.println("Lox hotspots:");
+    out.printf("%12s %14s %10s %6s | %s%n", "executions", "evaluations",
+               "self ms", "line", "source");
+    for (int i = 0; i < source.length; i++) {
+      Line line = lines.get(i + 1);
+      if (line == null || line.executions == 0) {
+        out.printf("%12s %14s %10s %6d | %s%n", "", "", "", i + 1,
+                   source[i]);
+      } else {
+        out.printf("%12d %14d %10.3f %6d | %s%n", line.executions,
+                   line.evaluations, line.selfNanos / 1e6, i + 1,
+                   source[i]);
+      }
+    }
+
+    List<Line> hottest = new ArrayList<>(lines.values());
+    hottest.sort((a, b) -> Long.compare(b.selfNanos, a.selfNanos));
+
+    out.println();
+    out.println("Hottest lines by self time:");
+    for (Line line : hottest.subList(0,
+        Math.min(HOTTEST_LINES, hottest.size()))) {
+      if (line.selfNanos == 0) break;
+      String text = line.number <= source.length ?
+          source[line.number - 1].trim() : "";
+      out.printf("%6.1f%% %10.3f ms  line %d: %s%n",
+                 totalNanos == 0 ? 0 : 100.0 * line.selfNanos / totalNanos,
+                 line.selfNanos / 1e6, line.number, text);
+    }
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    count(stmt.statements);
+    return null;
+  }
+
+  @Override
+  public Void visitClassStmt(Stmt.Class stmt) {
+    evaluated(stmt, stmt.superclass);
+    for (Stmt.Function method : stmt.methods) count(method);
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    evaluated(stmt, stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    count(stmt.body);
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    evaluated(stmt, stmt.condition);
+    count(stmt.thenBranch);
+    if (stmt.elseBranch != null) count(stmt.elseBranch);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    evaluated(stmt, stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    evaluated(stmt, stmt.value);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    evaluated(stmt, stmt.initializer);
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    evaluated(stmt, stmt.condition);
+    count(stmt.body);
+    return null;
+  }
+
+  @Override
+  public Long visitAssignExpr(Expr.Assign expr) {
+    return expr.executions + expr.value.accept(this);
+  }
+
+  @Override
+  public Long visitBinaryExpr(Expr.Binary expr) {
+    return expr.executions + expr.left.accept(this) +
+        expr.right.accept(this);
+  }
+
+  @Override
+  public Long visitCallExpr(Expr.Call expr) {
+    long executions = expr.executions + expr.callee.accept(this);
+    for (Expr argument : expr.arguments) executions += argument.accept(this);
+    return executions;
+  }
+
+  @Override
+  public Long visitIndexExpr(Expr.Index expr) {
+    return expr.executions + expr.object.accept(this) +
+        expr.index.accept(this);
+  }
+
+  @Override
+  public Long visitSetIndexExpr(Expr.SetIndex expr) {
+    return expr.executions + expr.object.accept(this) +
+        expr.index.accept(this) + expr.value.accept(this);
+  }
+
+  @Override
+  public Long visitArrayExpr(Expr.Array expr) {
+    long executions = expr.executions;
+    for (Expr element : expr.elements) executions += element.accept(this);
+    return executions;
+  }
+
+  @Override
+  public Long visitGetExpr(Expr.Get expr) {
+    return expr.executions + expr.object.accept(this);
+  }
+
+  @Override
+  public Long visitGroupingExpr(Expr.Grouping expr) {
+    return expr.executions + expr.expression.accept(this);
+  }
+
+  @Override
+  public Long visitLiteralExpr(Expr.Literal expr) {
+    return expr.executions;
+  }
+
+  @Override
+  public Long visitLogicalExpr(Expr.Logical expr) {
+    return expr.executions + expr.left.accept(this) +
+        expr.right.accept(this);
+  }
+
+  @Override
+  public Long visitSetExpr(Expr.Set expr) {
+    return expr.executions + expr.object.accept(this) +
+        expr.value.accept(this);
+  }
+
+  @Override
+  public Long visitSuperExpr(Expr.Super expr) {
+    return expr.executions;
+  }
+
+  @Override
+  public Long visitThisExpr(Expr.This expr) {
+    return expr.executions;
+  }
+
+  @Override
+  public Long visitUnaryExpr(Expr.Unary expr) {
+    return expr.executions + expr.right.accept(this);
+  }
+
+  @Override
+  public Long visitVariableExpr(Expr.Variable expr) {
+    return expr.executions;
+  }
+}
@@ -28,44 +28,100 @@ import dev.muhings.lox.Stmt.While;
 
 class Interpreter implements Expr.Visitor<Object>,
                              Stmt.Visitor<Void> {
-  final Environment globals = new Environment();
-  private Environment environment = globals;
-	private final Map<Expr, Integer> locals = new HashMap<>();
+  final Environment globals;
+  private Environment environment;
+	// Where print statements go; the command line picks its flush policy
+	// and the script engine points it at the writer of each ScriptContext.
+	OutputSink out;
+	Profiler profiler = null;
+	// Counts executions and time on the nodes themselves; see HotspotReport.
+	boolean instrumented = false;
+	private long nestedNanos = 0;
+	// Set by isolates to stop runaway scripts; shared with children.
+	StatementBudget budget = null;
 	
 	Interpreter() {
-    globals.define("clock", new LoxCallable() {
-      @Override
-      public int arity() { return 0; }
-
-      @Override
-      public Object call(Interpreter interpreter,
-                         List<Object> arguments) {
-        return (double)System.currentTimeMillis() / 1000.0;
-      }
+    this(OutputSink.standardOutput(OutputSink.Flush.LINE));
+  }
 
-      @Override
-      public String toString() { return "<native fn>"; }
-    });
+	// The resolver records scope distances on the AST itself, so any
+	// number of interpreters can run the same resolved program.
+	Interpreter(OutputSink out) {
+    this.globals = new Environment();
+    this.environment = globals;
+    this.out = out;
+    Natives.define(globals);
+  }
+
+	// An interpreter for a task started by spawn(), which runs in the same
+	// program on another thread: it shares the globals, output and
+	// statement budget, and has its own call stack. The
+	// profiler only follows the thread that started it.
+	Interpreter(Interpreter parent) {
+    this.globals = parent.globals;
+    this.environment = globals;
+    this.out = parent.out;
+    this.instrumented = parent.instrumented;
+    this.budget = parent.budget;
   }
 
 	void interpret(List<Stmt> statements) {
     try {
-      for (Stmt statement : statements) {
-        execute(statement);
-      }
+      execute(statements);
     } catch (RuntimeError error) {
+      LoxMetrics.runtimeError();
+      LoxEvents.runtimeError(error);
       Lox.runtimeError(error);
     }
   }
 
+	// Leaves runtime errors to the caller.
+	void execute(List<Stmt> statements) {
+    for (Stmt statement : statements) {
+      execute(statement);
+    }
+  }
+
 	void resolve(Expr expr, int depth) {
-    locals.put(expr, depth);
+    expr.depth = depth;
+  }
+
+	Integer resolvedDepth(Expr expr) {
+    return expr.depth < 0 ? null : expr.depth;
+  }
+
+	Environment currentEnvironment() {
+    return environment;
   }
 
 	private void execute(Stmt stmt) {
+    LoxMetrics.statementExecuted();
+    if (budget != null) budget.spend(stmt);
+
+    if (instrumented) {
+      executeCounted(stmt);
+      return;
+    }
+
     stmt.accept(this);
   }
 
+	// Self time leaves out the statements run inside this one, including
+	// the bodies of the functions it calls.
+	private void executeCounted(Stmt stmt) {
+    stmt.executions++;
+    long outerNested = nestedNanos;
+    nestedNanos = 0;
+    long start = System.nanoTime();
+    try {
+      stmt.accept(this);
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      stmt.selfNanos += elapsed - nestedNanos;
+      nestedNanos = outerNested + elapsed;
+    }
+  }
+
 	@Override
 	public Object visitLiteralExpr(Literal expr) {
 		return expr.value;
@@ -100,7 +156,7 @@ class Interpreter implements Expr.Visitor<Object>,
 
 	@Override
 	public Object visitSuperExpr(Super expr) {
-		int distance = locals.get(expr);
+		int distance = expr.depth;
     LoxClass superclass = (LoxClass)environment.getAt(
         distance, "super");
 
@@ -195,38 +251,76 @@ class Interpreter implements Expr.Visitor<Object>,
 
 	@Override
 	public Object visitGetExpr(Get expr) {
-		Object object = evaluate(expr.object);
+		return property(evaluate(expr.object), expr.name);
+	}
+
+	private Object property(Object object, Token name) {
     if (object instanceof LoxInstance loxInstance) {
-      return loxInstance.get(expr.name);
+      return loxInstance.get(name);
+    }
+    if (object instanceof NativeObject nativeObject) {
+      return nativeObject.get(name);
     }
 
-    throw new RuntimeError(expr.name,
+    throw new RuntimeError(name,
         "Only instances have properties.");
 	}
 
 	@Override
 	public Object visitCallExpr(Call expr) {
-		Object callee = evaluate(expr.callee);
+		// A native object's method is called without binding it first.
+		if (expr.callee instanceof Get get) {
+      if (instrumented) get.executions++;
+      Object object = evaluate(get.object);
+      if (object instanceof NativeObject nativeObject) {
+        NativeMethod<?> method = nativeObject.method(get.name.lexeme);
+        if (method != null) {
+          List<Object> arguments = arguments(expr, method.arity);
+          try {
+            return method.call(nativeObject, this, arguments);
+          } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+          }
+        }
+      }
 
-    List<Object> arguments = new ArrayList<>();
-    for (Expr argument : expr.arguments) { 
-      arguments.add(evaluate(argument));
+      return call(expr, property(object, get.name));
     }
 
-		if (!(callee instanceof LoxCallable)) {
+		return call(expr, evaluate(expr.callee));
+	}
+
+	private Object call(Call expr, Object callee) {
+    if (!(callee instanceof LoxCallable)) {
+      arguments(expr, -1);
       throw new RuntimeError(expr.paren,
           "Can only call functions and classes.");
     }
 
     LoxCallable function = (LoxCallable)callee;
+    List<Object> arguments = arguments(expr, function.arity());
+    try {
+      return function.call(this, arguments);
+    } catch (NativeError error) {
+      throw new RuntimeError(expr.paren, error.getMessage());
+    }
+	}
 
-		 if (arguments.size() != function.arity()) {
+	// Evaluates the arguments, then checks there are as many as the
+	// callee takes, unless arity is -1.
+	private List<Object> arguments(Call expr, int arity) {
+    List<Object> arguments = new ArrayList<>(expr.arguments.size());
+    for (Expr argument : expr.arguments) {
+      arguments.add(evaluate(argument));
+    }
+
+		if (arity >= 0 && arguments.size() != arity) {
       throw new RuntimeError(expr.paren, "Expected " +
-          function.arity() + " arguments but got " +
+          arity + " arguments but got " +
           arguments.size() + ".");
     }
 
-    return function.call(this, arguments);
+    return arguments;
 	}
 
 	@Override
@@ -243,8 +337,8 @@ class Interpreter implements Expr.Visitor<Object>,
 	public Object visitAssignExpr(Assign expr) {
 		Object value = evaluate(expr.value);
     
-		Integer distance = locals.get(expr);
-    if (distance != null) {
+		int distance = expr.depth;
+    if (distance >= 0) {
       environment.assignAt(distance, expr.name, value);
     } else {
       globals.assign(expr.name, value);
@@ -253,25 +347,102 @@ class Interpreter implements Expr.Visitor<Object>,
 		return value;
 	}
 
-	private String stringify(Object object) {
-    if (object == null) return "nil";
+	@Override
+	public Object visitIndexExpr(Expr.Index expr) {
+		Object object = evaluate(expr.object);
+    Object index = evaluate(expr.index);
+
+    if (object instanceof LoxArray array) {
+      return array.get((int)index(expr.bracket, index, array.length()));
+    }
+    if (object instanceof LoxBuffer buffer) {
+      return buffer.get(index(expr.bracket, index, buffer.length()));
+    }
+    if (object instanceof LoxMap map) return map.get(index);
+
+    throw new RuntimeError(expr.bracket,
+        "Only arrays, buffers and maps can be indexed.");
+	}
 
-    if (object instanceof Double) {
-      String text = object.toString();
-      if (text.endsWith(".0")) {
-        text = text.substring(0, text.length() - 2);
+	@Override
+	public Object visitSetIndexExpr(Expr.SetIndex expr) {
+		Object object = evaluate(expr.object);
+    Object index = evaluate(expr.index);
+
+    if (object instanceof LoxArray array) {
+      Object value = evaluate(expr.value);
+      array.set((int)index(expr.bracket, index, array.length()), value);
+      return value;
+    }
+    if (object instanceof LoxBuffer buffer) {
+      Object value = evaluate(expr.value);
+      if (!(value instanceof Double number)) {
+        throw new RuntimeError(expr.bracket,
+            "Only numbers can be stored in a buffer.");
       }
-      return text;
+
+      try {
+        buffer.set(index(expr.bracket, index, buffer.length()), number);
+      } catch (NativeError error) {
+        throw new RuntimeError(expr.bracket, error.getMessage());
+      }
+      return value;
+    }
+    if (object instanceof LoxMap map) {
+      if (index == null) {
+        throw new RuntimeError(expr.bracket, "Map keys can't be nil.");
+      }
+
+      Object value = evaluate(expr.value);
+      map.set(index, value);
+      return value;
+    }
+
+    throw new RuntimeError(expr.bracket,
+        "Only arrays, buffers and maps can be indexed.");
+	}
+
+	@Override
+	public Object visitArrayExpr(Expr.Array expr) {
+		Object[] elements = new Object[expr.elements.size()];
+    for (int i = 0; i < elements.length; i++) {
+      elements[i] = evaluate(expr.elements.get(i));
+    }
+
+    return LoxArray.of(elements);
+	}
+
+	// Checks an index into an array or buffer of this length.
+	private static long index(Token bracket, Object index, long length) {
+    if (!(index instanceof Double number) || number != Math.floor(number)) {
+      throw new RuntimeError(bracket, "Index must be a whole number.");
+    }
+
+    long i = (long)(double)number;
+    if (i < 0 || i >= length) {
+      throw new RuntimeError(bracket, "Index " + stringify(index) +
+          " is out of bounds for length " + length + ".");
+    }
+
+    return i;
+  }
+
+	static String stringify(Object object) {
+    if (object == null) return "nil";
+
+    if (object instanceof Double number) {
+      return NumberText.format(number);
     }
 
     return object.toString();
   }
 
 	private Object evaluate(Expr expr) {
+    if (instrumented) expr.executions++;
     return expr.accept(this);
   }
 
-	private  boolean  isTruthy ( Object  object ) {
+	static  boolean  isTruthy ( Object  object ) {
      if ( object == null ) return  false ;
      if ( object  instanceof  Boolean ) return ( boolean ) object ;
      return  true ; 
@@ -345,6 +516,7 @@ class Interpreter implements Expr.Visitor<Object>,
     }
 
 		environment.define(stmt.name.lexeme, null);
+		if (profiler != null) profiler.declareClass(stmt);
 
 		if (stmt.superclass != null) {
     	environment = new Environment(environment);
@@ -377,7 +549,7 @@ class Interpreter implements Expr.Visitor<Object>,
 	@Override
 	public Void visitPrintStmt(Print stmt) {
 		Object value = evaluate(stmt.expression);
-    System.out.println(stringify(value));
+    out.printLine(value);
     return null;
 	}
 
@@ -409,8 +581,8 @@ class Interpreter implements Expr.Visitor<Object>,
 	}
 
 	private Object lookUpVariable(Token name, Expr expr) {
-    Integer distance = locals.get(expr);
-    if (distance != null) {
+    int distance = expr.depth;
+    if (distance >= 0) {
       return environment.getAt(distance, name.lexeme);
     } else {
       return globals.get(name);
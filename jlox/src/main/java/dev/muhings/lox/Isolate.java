@@ -0,0 +1,111 @@
+package dev.muhings.lox;
+
+import java.io.Writer;
+
+/**
+ * One run of a {@link CompiledScript} with its own interpreter: its own
+ * globals, call stack and captured output, sharing only the immutable
+ * program with other isolates. An isolate can stop a script after a
+ * number of statements, which keeps a runaway loop from holding a thread
+ * forever, and keeps only the first characters of the output, one
+ * million unless told otherwise. Whatever the script throws ends up in
+ * the result's error rather than escaping the run. Isolates are meant to
+ * run once, on any thread; an {@link IsolatePool} runs many of them at
+ * the same time.
+ *
+ * Nothing an isolate starts outlives its run: spawn() is turned off,
+ * since a task could keep running after the result is in, while
+ * parallelFor and parallelMap finish before they return and count
+ * their statements against the isolate's limit.
+ */
+public final class Isolate {
+  private static final int DEFAULT_OUTPUT_LIMIT = 1 << 20;
+
+  private final CompiledScript script;
+  private final long statementLimit;
+  private final int outputLimit;
+
+  public Isolate(CompiledScript script) {
+    this(script, Long.MAX_VALUE);
+  }
+
+  public Isolate(CompiledScript script, long statementLimit) {
+    this(script, statementLimit, DEFAULT_OUTPUT_LIMIT);
+  }
+
+  public Isolate(CompiledScript script, long statementLimit,
+                 int outputLimit) {
+    if (statementLimit < 1) {
+      throw new IllegalArgumentException("Statement limit must be positive.");
+    }
+    if (outputLimit < 0) {
+      throw new IllegalArgumentException(
+          "Output limit must not be negative.");
+    }
+
+    this.script = script;
+    this.statementLimit = statementLimit;
+    this.outputLimit = outputLimit;
+  }
+
+  public IsolateResult run() {
+    CappedWriter output = new CappedWriter(outputLimit);
+    OutputSink out = new OutputSink(output, OutputSink.Flush.FULL);
+    Interpreter interpreter = script.newInterpreter(out);
+    StatementBudget budget = new StatementBudget(statementLimit);
+    interpreter.budget = budget;
+
+    long start = System.nanoTime();
+    Diagnostic error = null;
+    try {
+      script.run(interpreter);
+    } catch (LoxException e) {
+      error = e.diagnostics().get(0);
+    } catch (StackOverflowError e) {
+      error = new Diagnostic(Diagnostic.Kind.RUNTIME, 0, "",
+                             "Stack overflow.");
+    } catch (NativeError e) {
+      error = new Diagnostic(Diagnostic.Kind.RUNTIME, 0, "", e.getMessage());
+    } catch (RuntimeException e) {
+      // An interpreter bug rather than a Lox error, kept with its class.
+      error = new Diagnostic(Diagnostic.Kind.RUNTIME, 0, "", e.toString());
+    }
+    long elapsed = System.nanoTime() - start;
+
+    out.close();
+    return new IsolateResult(output.toString(), output.truncated, error,
+                             budget.executed(), elapsed);
+  }
+
+  // Keeps the first limit characters written to it and drops the rest.
+  private static final class CappedWriter extends Writer {
+    private final StringBuilder text = new StringBuilder();
+    private final int limit;
+    private boolean truncated = false;
+
+    CappedWriter(int limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+      int room = limit - text.length();
+      if (length > room) {
+        truncated = true;
+        length = room;
+      }
+      text.append(chars, offset, length);
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+    @Override
+    public String toString() {
+      return text.toString();
+    }
+  }
+}
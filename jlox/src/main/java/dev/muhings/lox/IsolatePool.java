@@ -0,0 +1,85 @@
+package dev.muhings.lox;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs isolates concurrently. By default every isolate gets a virtual
+ * thread when the JVM has them (Java 21 and later), which suits many
+ * short scripts and lets deep recursion grow the stack as needed; on
+ * older JVMs it falls back to a pool of platform threads, one per core.
+ * The build targets Java 17, so virtual threads are looked up
+ * reflectively.
+ */
+public final class IsolatePool implements AutoCloseable {
+  private final ExecutorService executor;
+  private final boolean virtualThreads;
+
+  public IsolatePool() {
+    ExecutorService virtual = virtualThreadExecutor();
+    this.virtualThreads = virtual != null;
+    this.executor = virtual != null ? virtual : platformThreadExecutor();
+  }
+
+  public IsolatePool(ExecutorService executor) {
+    this.executor = executor;
+    this.virtualThreads = false;
+  }
+
+  public boolean usesVirtualThreads() {
+    return virtualThreads;
+  }
+
+  public CompletableFuture<IsolateResult> submit(CompiledScript script) {
+    return submit(new Isolate(script));
+  }
+
+  public CompletableFuture<IsolateResult> submit(CompiledScript script,
+                                                 long statementLimit) {
+    return submit(new Isolate(script, statementLimit));
+  }
+
+  public CompletableFuture<IsolateResult> submit(Isolate isolate) {
+    return CompletableFuture.supplyAsync(isolate::run, executor);
+  }
+
+  // Waits for the isolates already submitted.
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        // Keep waiting; scripts without a statement limit can run long.
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Null before Java 21. Also used for the tasks of spawn().
+  static ExecutorService virtualThreadExecutor() {
+    try {
+      Method factory =
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService)factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  private static ExecutorService platformThreadExecutor() {
+    AtomicInteger count = new AtomicInteger();
+    return Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), runnable -> {
+          Thread thread = new Thread(runnable,
+              "lox-isolate-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+}
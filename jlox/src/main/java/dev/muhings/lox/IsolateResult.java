@@ -0,0 +1,14 @@
+package dev.muhings.lox;
+
+/**
+ * What running a script in an {@link Isolate} produced: what it printed,
+ * up to the isolate's output limit, whether it printed more than that,
+ * the error that stopped it if any, and what it cost.
+ */
+public record IsolateResult(String output, boolean outputTruncated,
+                            Diagnostic error, long statementsExecuted,
+                            long wallNanos) {
+  public boolean succeeded() {
+    return error == null;
+  }
+}
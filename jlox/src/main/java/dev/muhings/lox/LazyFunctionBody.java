@@ -0,0 +1,86 @@
+package dev.muhings.lox;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The body of a function read by a lazy {@link Parser}: just the tokens
+ * between the braces, whose syntax the parser has already checked, ended
+ * by an EOF token. The Resolver skips the body and leaves a {@link
+ * Resolver.Context} behind; the first call of the function parses and
+ * resolves it in that context, after which this list behaves like the
+ * ordinary statement list of an eagerly parsed body. Errors the resolver
+ * finds in the body are only reported then, as a runtime error.
+ */
+class LazyFunctionBody extends AbstractList<Stmt> {
+  // Dropped once the body is parsed.
+  private List<Token> tokens;
+  private Resolver.Context context;
+  private volatile List<Stmt> statements;
+
+  LazyFunctionBody(List<Token> tokens) {
+    this.tokens = tokens;
+  }
+
+  void defer(Resolver.Context context) {
+    this.context = context;
+  }
+
+  boolean isParsed() {
+    return statements != null;
+  }
+
+  void force(Interpreter interpreter, Stmt.Function function) {
+    if (statements != null) return;
+
+    synchronized (this) {
+      if (statements != null) return;
+
+      StringBuilder errors = new StringBuilder();
+      ErrorReporter reporter = (line, where, message) ->
+          errors.append("\n[line ").append(line).append("] Error")
+                .append(where).append(": ").append(message);
+
+      List<Stmt> parsed = Parser.forCheckedBody(tokens, reporter).parse();
+
+      if (errors.length() == 0) {
+        new Resolver(interpreter, reporter)
+            .resolveDeferred(function, parsed, context);
+      }
+
+      if (errors.length() > 0) {
+        throw new RuntimeError(function.name, "Error in body of '" +
+            function.name.lexeme + "':" + errors);
+      }
+
+      statements = parsed;
+      tokens = null;
+      context = null;
+    }
+  }
+
+  @Override
+  public Stmt get(int index) {
+    return parsed().get(index);
+  }
+
+  @Override
+  public Iterator<Stmt> iterator() {
+    return parsed().iterator();
+  }
+
+  @Override
+  public int size() {
+    return parsed().size();
+  }
+
+  private List<Stmt> parsed() {
+    List<Stmt> parsed = statements;
+    if (parsed == null) {
+      throw new IllegalStateException("Function body has not been parsed.");
+    }
+
+    return parsed;
+  }
+}
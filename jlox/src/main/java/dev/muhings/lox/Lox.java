@@ -3,32 +3,162 @@ package dev.muhings.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class Lox {
 	private static final Interpreter interpreter = new Interpreter();
+	private static final ErrorReporter reporter = Lox::report;
 	static boolean hadError = false;
 	static boolean hadRuntimeError = false;
+	private static boolean parallelFrontEnd = false;
+	private static boolean lazyFunctions = false;
+	private static boolean cacheAst = false;
+	private static Path profileOutput = null;
+	private static int profileHertz = 997;
+	private static int profileTop = 20;
+	private static boolean heapHistogram = false;
+	private static boolean hotspots = false;
+	private static PhaseTimings timings = null;
+	private static OutputSink.Flush flush = null;
 
 
 	 public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
-      System.exit(64); 
-    } else if (args.length == 1) {
-      runFile(args[0]);
+    String script = null;
+    for (String arg : args) {
+      if (arg.equals("--parallel")) {
+        parallelFrontEnd = true;
+      } else if (arg.equals("--lazy")) {
+        lazyFunctions = true;
+      } else if (arg.equals("--cache")) {
+        cacheAst = true;
+      } else if (arg.equals("--profile")) {
+        profileOutput = Paths.get("lox-profile.collapsed");
+      } else if (arg.startsWith("--profile=")) {
+        profileOutput = Paths.get(optionValue(arg));
+      } else if (arg.startsWith("--profile-hz=")) {
+        profileHertz = intOption(arg);
+      } else if (arg.startsWith("--profile-top=")) {
+        profileTop = intOption(arg);
+      } else if (arg.equals("--hotspots")) {
+        hotspots = true;
+        interpreter.instrumented = true;
+      } else if (arg.equals("--timings")) {
+        timings = new PhaseTimings(false);
+      } else if (arg.equals("--timings=json")) {
+        timings = new PhaseTimings(true);
+      } else if (arg.equals("--heap-histogram")) {
+        heapHistogram = true;
+      } else if (arg.startsWith("--flush=")) {
+        flush = flushOption(arg);
+      } else if (arg.startsWith("--") || script != null) {
+        usage();
+      } else {
+        script = arg;
+      }
+    }
+
+    if (profileOutput != null) {
+      interpreter.profiler = new Profiler(profileHertz);
+      interpreter.profiler.start();
+    }
+
+    if (script != null) {
+      // Scripts run from a terminal still show their progress; piped
+      // into a file or another program, output only moves in 64 KB blocks.
+      if (flush == null) {
+        flush = System.console() != null ?
+            OutputSink.Flush.PERIODIC : OutputSink.Flush.FULL;
+      }
+      output(flush);
+      runFile(script);
     } else {
+      if (flush != null) output(flush);
 			runPrompt();
     }
   }
 
+	private static void output(OutputSink.Flush flush) {
+    interpreter.out.close();
+    interpreter.out = OutputSink.standardOutput(flush);
+  }
+
+	private static void usage() {
+    System.out.println("Usage: jlox [options] [script]");
+    System.out.println();
+    System.out.println("Options:");
+    System.out.println("  --parallel          scan and parse large scripts on all cores");
+    System.out.println("  --lazy              parse function bodies on their first call");
+    System.out.println("  --cache             reuse the parsed script from script.lox.cache");
+    System.out.println("  --profile[=file]    sample Lox call stacks into a collapsed-stack file");
+    System.out.println("  --profile-hz=n      samples per second, default 997");
+    System.out.println("  --profile-top=n     functions listed in the profile summary, default 20");
+    System.out.println("  --hotspots          count every statement and print the annotated script");
+    System.out.println("  --timings[=json]    report time and allocation per phase on exit");
+    System.out.println("  --heap-histogram    print the live Lox objects per class on exit");
+    System.out.println("  --flush=policy      when printed output is written: line, periodic or full");
+    System.exit(64);
+  }
+
+	private static String optionValue(String arg) {
+    return arg.substring(arg.indexOf('=') + 1);
+  }
+
+	private static int intOption(String arg) {
+    try {
+      int value = Integer.parseInt(optionValue(arg));
+      if (value > 0) return value;
+    } catch (NumberFormatException e) {
+      // Falls through to the usage message.
+    }
+
+    usage();
+    return 0;
+  }
+
+	private static OutputSink.Flush flushOption(String arg) {
+    return switch (optionValue(arg)) {
+      case "line" -> OutputSink.Flush.LINE;
+      case "periodic" -> OutputSink.Flush.PERIODIC;
+      case "full" -> OutputSink.Flush.FULL;
+      default -> {
+        usage();
+        yield null;
+      }
+    };
+  }
+
+	// Runs once the script or the prompt is done, before exiting.
+	private static void finish() {
+    interpreter.out.flush();
+    if (interpreter.profiler != null) {
+      interpreter.profiler.stop(profileOutput, profileTop, System.err);
+    }
+
+    if (timings != null) timings.print(System.err);
+    if (heapHistogram) {
+      HeapHistogram.print(interpreter, new PrintWriter(System.err));
+    }
+  }
+
 	private static void runFile(String path) throws IOException {
     byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()));
+    String source = new String(bytes, Charset.defaultCharset());
+    if (timings != null) timings.source(bytes.length);
+    List<Stmt> statements = cacheAst ?
+        runCached(AstCache.forScript(Paths.get(path), bytes), source) :
+        run(source);
+
+		if (hotspots && statements != null) {
+      HotspotReport.print(statements, source, System.err);
+    }
 
+		finish();
 		if (hadError) System.exit(65);
 		if (hadRuntimeError) System.exit(70);
   }
@@ -41,44 +171,112 @@ public class Lox {
       System.out.print("> ");
       String line = reader.readLine();
       if (line == null) break;
+      if (timings != null) timings.source(line.length());
       run(line);
     }
+
+    finish();
   }
 
-	private static void run(String source) {
-		Scanner scanner = new Scanner(source);
-    List<Token> tokens = scanner.scanTokens();
+	// Both return the statements they ran, or null after a compile error.
+	private static List<Stmt> run(String source) {
+    List<Stmt> statements = parse(source);
 
-  	Parser parser = new Parser(tokens);
-    List<Stmt> statements = parser.parse();
+    if (hadError) return null;
+    if (timings != null) timings.nodes(statements);
 
-    if (hadError) return;
+		resolve(statements);
+    interpret(statements);
+    return statements;
+	}
 
-		Resolver resolver = new Resolver(interpreter);
-    resolver.resolve(statements);
+	private static List<Stmt> runCached(AstCache cache, String source) {
+    List<Stmt> statements = phase(Phase.PARSE, () -> cache.load(interpreter));
+    if (statements == null) {
+      statements = parse(source);
+      if (hadError) return null;
 
-    interpreter.interpret(statements);
-	}
+      resolve(statements);
+      if (hadError) return null;
+
+      cache.store(statements, interpreter);
+    }
+
+    if (timings != null) timings.nodes(statements);
+    interpret(statements);
+    return statements;
+  }
+
+	private static List<Stmt> parse(String source) {
+    if (parallelFrontEnd) {
+      // Scanning and parsing overlap here, so it all counts as parsing.
+      return phase(Phase.PARSE, () ->
+          ParallelFrontEnd.parse(source, reporter, lazyFunctions));
+    }
+
+    List<Token> tokens = phase(Phase.SCAN, () -> {
+		  Scanner scanner = new Scanner(source);
+      return scanner.scanTokens();
+    });
+    if (timings != null) timings.tokens(tokens);
+
+    return phase(Phase.PARSE, () -> {
+  	  Parser parser = new Parser(tokens, reporter, lazyFunctions);
+      return parser.parse();
+    });
+  }
+
+	private static void resolve(List<Stmt> statements) {
+    phase(Phase.RESOLVE, () -> {
+		  Resolver resolver = new Resolver(interpreter);
+      resolver.resolve(statements);
+    });
+  }
+
+	private static void interpret(List<Stmt> statements) {
+    phase(Phase.EXECUTE, () -> interpreter.interpret(statements));
+  }
+
+	// Reports how long a phase took to JMX, JFR and --timings when they
+	// are enabled.
+	private static <T> T phase(Phase phase, Supplier<T> work) {
+    long start = System.nanoTime();
+    PhaseTimings.Start timed = timings == null ? null : timings.begin();
+    LoxEvents.ScriptPhase event = LoxEvents.beginPhase(phase);
+    try {
+      return work.get();
+    } finally {
+      LoxEvents.endPhase(event);
+      long elapsed = System.nanoTime() - start;
+      LoxMetrics.phase(phase, elapsed);
+      if (timed != null) timings.end(phase, timed, elapsed);
+    }
+  }
+
+	private static void phase(Phase phase, Runnable work) {
+    phase(phase, () -> {
+      work.run();
+      return null;
+    });
+  }
 
 	static void error(int line, String message) {
-    report(line, "", message);
+    reporter.error(line, message);
   }
 
-  private static void report(int line, String where, String message) {
+  static void report(int line, String where, String message) {
     System.err.println(
         "[line " + line + "] Error" + where + ": " + message);
     hadError = true;
   }
 
 	static void error(Token token, String message) {
-    if (token.type == TokenType.EOF) {
-      report(token.line, " at end", message);
-    } else {
-      report(token.line, " at '" + token.lexeme + "'", message);
-    }
+    reporter.error(token, message);
   }
 
 	static void runtimeError(RuntimeError error) {
+    // What the script printed before the error comes out first.
+    interpreter.out.flush();
     System.err.println(error.getMessage() +
         "\n[line " + error.token.line + "]");
     hadRuntimeError = true;
@@ -0,0 +1,172 @@
+package dev.muhings.lox;
+
+import java.util.Arrays;
+
+/**
+ * A growable array, made by an [a, b, c] literal or by Array(length). As
+ * long as every element is a number the elements live unboxed in a
+ * double[], eight bytes each, instead of as Double objects with a
+ * reference to each; storing anything else copies them into an Object[]
+ * once, and the array stays that way.
+ *
+ * Scripts index it with a[i], read a.length and call push(value), pop()
+ * and slice(start, end). Arrays are not synchronized: tasks may read one
+ * at the same time, and the calls of a parallelFor may each store into
+ * their own index of a number array, but changing the length or storing
+ * a non-number while another task uses the array loses updates.
+ */
+final class LoxArray implements NativeObject {
+  private double[] numbers;
+  private Object[] objects = null;
+  private int size;
+
+  private LoxArray(double[] numbers, int size) {
+    this.numbers = numbers;
+    this.size = size;
+  }
+
+  private LoxArray(Object[] objects, int size) {
+    this.numbers = null;
+    this.objects = objects;
+    this.size = size;
+  }
+
+  // An array of this many zeros.
+  static LoxArray zeros(int length) {
+    return new LoxArray(new double[length], length);
+  }
+
+  // Takes ownership of the elements.
+  static LoxArray of(Object[] elements) {
+    double[] numbers = new double[elements.length];
+    for (int i = 0; i < elements.length; i++) {
+      if (!(elements[i] instanceof Double number)) {
+        return new LoxArray(elements, elements.length);
+      }
+      numbers[i] = number;
+    }
+
+    return new LoxArray(numbers, elements.length);
+  }
+
+  int length() {
+    return size;
+  }
+
+  Object get(int index) {
+    if (numbers != null) return numbers[index];
+    return objects[index];
+  }
+
+  void set(int index, Object value) {
+    if (numbers != null) {
+      if (value instanceof Double number) {
+        numbers[index] = number;
+        return;
+      }
+      generalize();
+    }
+
+    objects[index] = value;
+  }
+
+  void push(Object value) {
+    int capacity = numbers != null ? numbers.length : objects.length;
+    if (size == capacity) {
+      int grown = Math.max(8, capacity + (capacity >> 1));
+      if (numbers != null) {
+        numbers = Arrays.copyOf(numbers, grown);
+      } else {
+        objects = Arrays.copyOf(objects, grown);
+      }
+    }
+
+    size++;
+    set(size - 1, value);
+  }
+
+  Object pop() {
+    if (size == 0) {
+      throw new NativeError("Can't pop from an empty array.");
+    }
+
+    Object last = get(size - 1);
+    if (objects != null) objects[size - 1] = null;
+    size--;
+    return last;
+  }
+
+  LoxArray slice(int start, int end) {
+    if (start > end || end > size) {
+      throw new NativeError("Slice " + start + ".." + end +
+          " is out of bounds for length " + size + ".");
+    }
+
+    if (numbers != null) {
+      return new LoxArray(Arrays.copyOfRange(numbers, start, end),
+                          end - start);
+    }
+    return new LoxArray(Arrays.copyOfRange(objects, start, end),
+                        end - start);
+  }
+
+  boolean isNumeric() {
+    return numbers != null;
+  }
+
+  // The storage of a number array, valid up to length(); null otherwise.
+  double[] numbers() {
+    return numbers;
+  }
+
+  // For HeapHistogram: the capacity in elements.
+  int capacity() {
+    return numbers != null ? numbers.length : objects.length;
+  }
+
+  private void generalize() {
+    objects = new Object[numbers.length];
+    for (int i = 0; i < size; i++) objects[i] = numbers[i];
+    numbers = null;
+  }
+
+  private static final NativeMethod<LoxArray> PUSH = new NativeMethod<>(
+      "push", 1, (array, interpreter, arguments) -> {
+        array.push(arguments.get(0));
+        return null;
+      });
+  private static final NativeMethod<LoxArray> POP = new NativeMethod<>(
+      "pop", 0, (array, interpreter, arguments) -> array.pop());
+  private static final NativeMethod<LoxArray> SLICE = new NativeMethod<>(
+      "slice", 2, (array, interpreter, arguments) -> array.slice(
+          NativeFunction.count(arguments.get(0), 0, "Slice start"),
+          NativeFunction.count(arguments.get(1), 0, "Slice end")));
+
+  @Override
+  public NativeMethod<?> method(String name) {
+    return switch (name) {
+      case "push" -> PUSH;
+      case "pop" -> POP;
+      case "slice" -> SLICE;
+      default -> null;
+    };
+  }
+
+  @Override
+  public Object property(Token name) {
+    if (name.lexeme.equals("length")) return (double)size;
+    throw NativeObject.undefined(name);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder("[");
+    for (int i = 0; i < size; i++) {
+      if (i > 0) text.append(", ");
+      Object element = get(i);
+      text.append(element == this ? "[...]" :
+                  Interpreter.stringify(element));
+    }
+    return text.append("]").toString();
+  }
+}
@@ -0,0 +1,177 @@
+package dev.muhings.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fixed-length array of numbers stored outside the Java heap, made by
+ * Buffer(length) or by mapBuffer(path, writable), which maps a file of
+ * little-endian doubles, the layout numpy's tofile() writes on x86.
+ * Millions of numbers in a buffer are invisible to the garbage
+ * collector, and a mapped file is paged in by the OS as it is read, so
+ * a script can work through files larger than the heap.
+ *
+ * A ByteBuffer holds at most 2 GB, so the numbers are split over
+ * segments of 2^27 (1 GiB) each. Scripts index a buffer with b[i] like
+ * an array; the value stays unboxed until the interpreter reads it.
+ * b.length is the number of elements, fill(value) sets them all and
+ * flush() writes the changes to a writable mapping back to its file.
+ * Like arrays, buffers are not synchronized, but tasks can store into
+ * different elements at the same time.
+ */
+final class LoxBuffer implements NativeObject {
+  static final int SEGMENT_BITS = 27;
+  static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+  private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  private final DoubleBuffer[] segments;
+  // The mappings behind the segments, for flush(); null off files.
+  private final MappedByteBuffer[] mappings;
+  private final long length;
+
+  private LoxBuffer(DoubleBuffer[] segments, MappedByteBuffer[] mappings,
+                    long length) {
+    this.segments = segments;
+    this.mappings = mappings;
+    this.length = length;
+  }
+
+  static LoxBuffer allocate(long length) {
+    DoubleBuffer[] segments = new DoubleBuffer[segmentCount(length)];
+    try {
+      for (int i = 0; i < segments.length; i++) {
+        segments[i] = ByteBuffer
+            .allocateDirect(Double.BYTES * segmentLength(length, i))
+            .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+      }
+    } catch (OutOfMemoryError e) {
+      throw new NativeError("Not enough direct memory for " +
+          length + " numbers; raise -XX:MaxDirectMemorySize.");
+    }
+
+    return new LoxBuffer(segments, null, length);
+  }
+
+  static LoxBuffer map(Path path, boolean writable) {
+    FileChannel.MapMode mode = writable ?
+        FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+    try (FileChannel channel = writable ?
+             FileChannel.open(path, StandardOpenOption.READ,
+                              StandardOpenOption.WRITE) :
+             FileChannel.open(path, StandardOpenOption.READ)) {
+      long bytes = channel.size();
+      if (bytes % Double.BYTES != 0) {
+        throw new NativeError("'" + path + "' is " + bytes +
+            " bytes long, which is not a whole number of doubles.");
+      }
+
+      long length = bytes / Double.BYTES;
+      DoubleBuffer[] segments = new DoubleBuffer[segmentCount(length)];
+      MappedByteBuffer[] mappings = new MappedByteBuffer[segments.length];
+      for (int i = 0; i < segments.length; i++) {
+        mappings[i] = channel.map(mode,
+            (long)i * SEGMENT_SIZE * Double.BYTES,
+            (long)segmentLength(length, i) * Double.BYTES);
+        segments[i] = mappings[i].order(ByteOrder.LITTLE_ENDIAN)
+            .asDoubleBuffer();
+      }
+
+      return new LoxBuffer(segments, mappings, length);
+    } catch (NoSuchFileException e) {
+      throw new NativeError("No such file '" + path + "'.");
+    } catch (IOException e) {
+      throw new NativeError("Could not map '" + path + "': " +
+                                     e.getMessage());
+    }
+  }
+
+  long length() {
+    return length;
+  }
+
+  double get(long index) {
+    return segments[(int)(index >>> SEGMENT_BITS)]
+        .get((int)index & SEGMENT_MASK);
+  }
+
+  void set(long index, double value) {
+    try {
+      segments[(int)(index >>> SEGMENT_BITS)]
+          .put((int)index & SEGMENT_MASK, value);
+    } catch (ReadOnlyBufferException e) {
+      throw new NativeError("Buffer is read-only.");
+    }
+  }
+
+  // Element i is element i % SEGMENT_SIZE of segment i / SEGMENT_SIZE.
+  DoubleBuffer segment(int index) {
+    return segments[index];
+  }
+
+  boolean isReadOnly() {
+    return segments.length > 0 && segments[0].isReadOnly();
+  }
+
+  void fill(double value) {
+    if (isReadOnly()) {
+      throw new NativeError("Buffer is read-only.");
+    }
+
+    for (DoubleBuffer segment : segments) {
+      for (int i = 0; i < segment.limit(); i++) segment.put(i, value);
+    }
+  }
+
+  void flush() {
+    if (mappings == null) return;
+    for (MappedByteBuffer mapping : mappings) mapping.force();
+  }
+
+  private static int segmentCount(long length) {
+    return (int)((length + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+  }
+
+  private static int segmentLength(long length, int segment) {
+    return (int)Math.min(SEGMENT_SIZE,
+                         length - ((long)segment << SEGMENT_BITS));
+  }
+
+  private static final NativeMethod<LoxBuffer> FILL = new NativeMethod<>(
+      "fill", 1, (buffer, interpreter, arguments) -> {
+        buffer.fill(NativeFunction.number(arguments.get(0), "Fill value"));
+        return null;
+      });
+  private static final NativeMethod<LoxBuffer> FLUSH = new NativeMethod<>(
+      "flush", 0, (buffer, interpreter, arguments) -> {
+        buffer.flush();
+        return null;
+      });
+
+  @Override
+  public NativeMethod<?> method(String name) {
+    return switch (name) {
+      case "fill" -> FILL;
+      case "flush" -> FLUSH;
+      default -> null;
+    };
+  }
+
+  @Override
+  public Object property(Token name) {
+    if (name.lexeme.equals("length")) return (double)length;
+    throw NativeObject.undefined(name);
+  }
+
+  @Override
+  public String toString() {
+    return "<buffer of " + length + " numbers>";
+  }
+}
@@ -1,12 +1,16 @@
 package dev.muhings.lox;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 public class LoxClass implements LoxCallable{
 	final String name;
 	private final Map<String, LoxFunction> methods;
 	final LoxClass superclass;
+	// Classes are shared between tasks, so this counts from any thread.
+	final LongAdder instancesCreated = new LongAdder();
 
 	LoxClass(String name, LoxClass superclass,
            Map<String, LoxFunction> methods) {
@@ -22,7 +26,23 @@ public class LoxClass implements LoxCallable{
 
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
+		if (!LoxEvents.recordingInstantiations()) {
+      return instantiate(interpreter, arguments);
+    }
+
+    LoxEvents.Instantiation event = new LoxEvents.Instantiation();
+    event.begin();
+    try {
+      return instantiate(interpreter, arguments);
+    } finally {
+      event.className = name;
+      event.commit();
+    }
+  }
+
+	private Object instantiate(Interpreter interpreter, List<Object> arguments) {
 		LoxInstance instance = new LoxInstance(this);
+		instancesCreated.increment();
 
 		 LoxFunction initializer = findMethod("init");
     if (initializer != null) {
@@ -39,11 +59,16 @@ public class LoxClass implements LoxCallable{
     return initializer.arity();
 	}
 
+	Collection<LoxFunction> methods() {
+    return methods.values();
+  }
+
 	LoxFunction findMethod(String name) {
     if (methods.containsKey(name)) {
       return methods.get(name);
     }
 
+		LoxMetrics.methodLookupMissed();
 		if (superclass != null) {
       return superclass.findMethod(name);
     }
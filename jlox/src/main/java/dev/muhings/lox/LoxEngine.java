@@ -0,0 +1,45 @@
+package dev.muhings.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point for running Lox inside another Java program.
+ *
+ * <pre>
+ * LoxEngine engine = new LoxEngine();
+ * CompiledScript script = engine.compile(source);
+ * script.run(out);   // as often as needed, from any thread
+ * </pre>
+ *
+ * Compiling scans, parses and resolves the source once. The result is
+ * immutable and can be shared between threads; every run gets its own
+ * globals, so runs cannot see each other's variables. Errors come back as
+ * {@link Diagnostic}s in a {@link LoxException} instead of being printed.
+ * An engine keeps no state and is safe to share as well.
+ */
+public final class LoxEngine {
+  public CompiledScript compile(String source) throws LoxException {
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    ErrorReporter reporter = (line, where, message) -> diagnostics.add(
+        new Diagnostic(Diagnostic.Kind.COMPILE, line, where, message));
+
+    Scanner scanner =
+        new Scanner(source, 0, source.length(), 1, reporter);
+    List<Stmt> statements = new Parser(scanner.scanTokens(), reporter)
+        .parse();
+    if (!diagnostics.isEmpty()) throw new LoxException(diagnostics);
+
+    // The interpreter only records the scope distances on the AST.
+    new Resolver(new Interpreter((OutputSink)null), reporter)
+        .resolve(statements);
+    if (!diagnostics.isEmpty()) throw new LoxException(diagnostics);
+
+    return new CompiledScript(statements);
+  }
+
+  public void run(String source, PrintStream out) throws LoxException {
+    compile(source).run(out);
+  }
+}
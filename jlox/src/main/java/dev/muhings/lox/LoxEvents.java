@@ -0,0 +1,117 @@
+package dev.muhings.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for Lox activity. All of them are disabled
+ * unless a recording turns them on (see jfr/lox.jfc), and the per-call
+ * events are guarded by a check on a shared probe instance, so a run
+ * without a recording allocates nothing extra. Java stack traces are left
+ * out: they would only show the interpreter's visitor frames.
+ *
+ * Loading the first event class starts up the whole recorder, which
+ * costs a few hundred milliseconds, so nothing here touches an event
+ * until Flight Recorder has been initialized by a recording.
+ */
+final class LoxEvents {
+  private LoxEvents() {}
+
+  @Name("dev.muhings.lox.ScriptPhase")
+  @Label("Lox Script Phase")
+  @Description("Scanning, parsing, resolving or executing a script")
+  @Category("Lox")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class ScriptPhase extends Event {
+    @Label("Phase")
+    String phase;
+  }
+
+  @Name("dev.muhings.lox.FunctionCall")
+  @Label("Lox Function Call")
+  @Category("Lox")
+  @Enabled(false)
+  @StackTrace(false)
+  @Threshold("10 ms")
+  static final class FunctionCall extends Event {
+    @Label("Function")
+    String function;
+
+    @Label("Line")
+    int line;
+  }
+
+  @Name("dev.muhings.lox.Instantiation")
+  @Label("Lox Instantiation")
+  @Description("Creating an instance, including its initializer")
+  @Category("Lox")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class Instantiation extends Event {
+    @Label("Class")
+    String className;
+  }
+
+  @Name("dev.muhings.lox.RuntimeError")
+  @Label("Lox Runtime Error")
+  @Category("Lox")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class RuntimeErrorEvent extends Event {
+    @Label("Message")
+    String message;
+
+    @Label("Line")
+    int line;
+  }
+
+  private static class Probes {
+    static final FunctionCall call = new FunctionCall();
+    static final Instantiation instantiation = new Instantiation();
+  }
+
+  private static boolean recording() {
+    return FlightRecorder.isInitialized();
+  }
+
+  static boolean recordingCalls() {
+    return recording() && Probes.call.isEnabled();
+  }
+
+  static boolean recordingInstantiations() {
+    return recording() && Probes.instantiation.isEnabled();
+  }
+
+  // Returns null when there is no recording.
+  static ScriptPhase beginPhase(Phase phase) {
+    if (!recording()) return null;
+
+    ScriptPhase event = new ScriptPhase();
+    event.phase = phase.label;
+    event.begin();
+    return event;
+  }
+
+  static void endPhase(ScriptPhase event) {
+    if (event != null) event.commit();
+  }
+
+  static void runtimeError(RuntimeError error) {
+    if (!recording()) return;
+
+    RuntimeErrorEvent event = new RuntimeErrorEvent();
+    if (event.isEnabled()) {
+      event.message = error.getMessage();
+      event.line = error.token.line;
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package dev.muhings.lox;
+
+import java.util.List;
+
+/**
+ * Thrown by {@link LoxEngine} and {@link CompiledScript} when a script
+ * does not compile or fails while running, with every error found.
+ */
+public class LoxException extends Exception {
+  private final List<Diagnostic> diagnostics;
+
+  LoxException(List<Diagnostic> diagnostics) {
+    super(String.join("\n", diagnostics.stream()
+        .map(Diagnostic::toString).toList()));
+    this.diagnostics = List.copyOf(diagnostics);
+  }
+
+  public List<Diagnostic> diagnostics() {
+    return diagnostics;
+  }
+}
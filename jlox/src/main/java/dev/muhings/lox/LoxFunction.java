@@ -15,6 +15,40 @@ class LoxFunction implements LoxCallable {
 
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
+		LoxMetrics.functionCalled();
+		if (!LoxEvents.recordingCalls()) return profile(interpreter, arguments);
+
+    LoxEvents.FunctionCall event = new LoxEvents.FunctionCall();
+    event.begin();
+    try {
+      return profile(interpreter, arguments);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.function = declaration.name.lexeme;
+        event.line = declaration.name.line;
+        event.commit();
+      }
+    }
+  }
+
+	private Object profile(Interpreter interpreter, List<Object> arguments) {
+		Profiler profiler = interpreter.profiler;
+    if (profiler == null) return invoke(interpreter, arguments);
+
+    profiler.enter(declaration);
+    try {
+      return invoke(interpreter, arguments);
+    } finally {
+      profiler.exit();
+    }
+  }
+
+	private Object invoke(Interpreter interpreter, List<Object> arguments) {
+		if (declaration.body instanceof LazyFunctionBody body) {
+      body.force(interpreter, declaration);
+    }
+
 		Environment environment = new Environment(closure);
     for (int i = 0; i < declaration.params.size(); i++) {
       environment.define(declaration.params.get(i).lexeme,
@@ -44,6 +78,10 @@ class LoxFunction implements LoxCallable {
     return "<fn " + declaration.name.lexeme + ">";
   }
 
+	Environment closure() {
+    return closure;
+  }
+
 	LoxFunction bind(LoxInstance instance) {
     Environment environment = new Environment(closure);
     environment.define("this", instance);
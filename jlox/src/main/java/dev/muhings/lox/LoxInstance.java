@@ -1,15 +1,32 @@
 package dev.muhings.lox;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class LoxInstance {
+	private static final VarHandle FIELDS;
+
+	static {
+    try {
+      FIELDS = MethodHandles.lookup().findVarHandle(
+          LoxInstance.class, "fields", Map.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
 	private LoxClass klass;
-	private final Map<String, Object> fields = new HashMap<>();
+	// A HashMap until tasks start, then a ConcurrentHashMap, like the
+	// variables of an Environment.
+	private Map<String, Object> fields = new HashMap<>();
 
 
   LoxInstance(LoxClass klass) {
     this.klass = klass;
+    LoxMetrics.instanceCreated();
   }
 
   @Override
@@ -18,9 +35,9 @@ public class LoxInstance {
   }
 
 	Object get(Token name) {
-    if (fields.containsKey(name.lexeme)) {
-      return fields.get(name.lexeme);
-    }
+    LoxMetrics.propertyLookedUp();
+    Object value = map().get(name.lexeme);
+    if (value != null) return Environment.unwrap(value);
 
 		LoxFunction method = klass.findMethod(name.lexeme);
 		if (method != null) return method.bind(this);
@@ -30,6 +47,31 @@ public class LoxInstance {
   }
 
 	void set(Token name, Object value) {
-    fields.put(name.lexeme, value);
+    map().put(name.lexeme, Environment.wrap(value));
+  }
+
+	LoxClass klass() {
+    return klass;
+  }
+
+	// The fields as stored, with nil as Environment.NIL.
+	Map<String, Object> fields() {
+    return map();
+  }
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> map() {
+    if (!Environment.isShared()) return fields;
+
+    Map<String, Object> map = (Map<String, Object>)FIELDS.getAcquire(this);
+    return map instanceof ConcurrentHashMap ? map : concurrentMap();
+  }
+
+	private synchronized Map<String, Object> concurrentMap() {
+    if (!(fields instanceof ConcurrentHashMap)) {
+      FIELDS.setRelease(this, new ConcurrentHashMap<>(fields));
+    }
+
+    return fields;
   }
 }
@@ -0,0 +1,220 @@
+package dev.muhings.lox;
+
+/**
+ * A hash map from Lox values to Lox values, made by Map(). Keys compare
+ * like == does: numbers and strings by value, booleans by value, and
+ * instances, functions and other objects by identity. nil is not a key.
+ *
+ * The table is open addressing with linear probing, keys and values
+ * interleaved in one Object[] so a lookup usually touches one cache line
+ * and the map costs no node objects per entry. Numbers are hashed from
+ * their bits directly, strings by the hash String keeps, and everything
+ * else by identity, so a lookup never calls into Lox code. The table
+ * doubles when it is two-thirds full, and delete shifts later entries
+ * back into the hole instead of leaving tombstones behind.
+ *
+ * Scripts use m[key] and m[key] = value, where reading a missing key
+ * gives nil, and the methods has, get, set, delete, keys and values;
+ * m.size is the number of entries. keys() and values() return arrays in
+ * the same, unspecified order. Like arrays, maps are not synchronized.
+ */
+final class LoxMap implements NativeObject {
+  private static final int MINIMUM_CAPACITY = 8;
+  // Two slots per entry, and an array can't be much longer than this.
+  private static final int MAXIMUM_CAPACITY = 1 << 29;
+
+  private Object[] table = new Object[2 * MINIMUM_CAPACITY];
+  private int shift = 32 - Integer.numberOfTrailingZeros(MINIMUM_CAPACITY);
+  private int size = 0;
+
+  int size() {
+    return size;
+  }
+
+  // Returns null when the key is missing.
+  Object get(Object key) {
+    int slot = find(key);
+    return slot < 0 ? null : table[slot + 1];
+  }
+
+  boolean has(Object key) {
+    return find(key) >= 0;
+  }
+
+  void set(Object key, Object value) {
+    checkKey(key);
+    int mask = table.length - 1;
+    for (int slot = home(key); ; slot = (slot + 2) & mask) {
+      Object existing = table[slot];
+      if (existing == null) {
+        if (size + 1 > capacity() / 3 * 2) {
+          grow();
+          set(key, value);
+          return;
+        }
+
+        table[slot] = key;
+        table[slot + 1] = value;
+        size++;
+        return;
+      }
+
+      if (existing.equals(key)) {
+        table[slot + 1] = value;
+        return;
+      }
+    }
+  }
+
+  boolean delete(Object key) {
+    int hole = find(key);
+    if (hole < 0) return false;
+
+    // Move back every entry of the cluster after the hole that would be
+    // unreachable from its home slot with the hole empty.
+    int mask = table.length - 1;
+    for (int slot = (hole + 2) & mask; table[slot] != null;
+         slot = (slot + 2) & mask) {
+      int home = home(table[slot]);
+      if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+        table[hole] = table[slot];
+        table[hole + 1] = table[slot + 1];
+        hole = slot;
+      }
+    }
+
+    table[hole] = null;
+    table[hole + 1] = null;
+    size--;
+    return true;
+  }
+
+  LoxArray keys() {
+    return collect(0);
+  }
+
+  LoxArray values() {
+    return collect(1);
+  }
+
+  // For HeapHistogram.
+  int capacity() {
+    return table.length / 2;
+  }
+
+  // For HeapHistogram: the keys and values, in one flat array with a
+  // null key wherever a slot is empty.
+  Object[] table() {
+    return table;
+  }
+
+  private LoxArray collect(int offset) {
+    Object[] items = new Object[size];
+    int count = 0;
+    for (int slot = 0; slot < table.length; slot += 2) {
+      if (table[slot] != null) items[count++] = table[slot + offset];
+    }
+    return LoxArray.of(items);
+  }
+
+  // The index of the key's slot in the table, or -1.
+  private int find(Object key) {
+    if (key == null) return -1;
+
+    int mask = table.length - 1;
+    for (int slot = home(key); ; slot = (slot + 2) & mask) {
+      Object existing = table[slot];
+      if (existing == null) return -1;
+      if (existing.equals(key)) return slot;
+    }
+  }
+
+  // Fibonacci hashing: the top bits of the hash times 2^32 / phi pick the
+  // home slot, which spreads keys that differ only in their high bits,
+  // like small whole numbers, as well as ones that differ in their low
+  // bits.
+  private int home(Object key) {
+    return ((hash(key) * 0x9E3779B9) >>> shift) << 1;
+  }
+
+  private static int hash(Object key) {
+    if (key instanceof Double number) {
+      long bits = Double.doubleToLongBits(number);
+      return (int)(bits ^ (bits >>> 32));
+    }
+    if (key instanceof String string) return string.hashCode();
+    if (key instanceof Boolean bool) return bool ? 1231 : 1237;
+    return System.identityHashCode(key);
+  }
+
+  private void grow() {
+    if (capacity() == MAXIMUM_CAPACITY) {
+      throw new NativeError("Map is too large.");
+    }
+
+    Object[] old = table;
+    table = new Object[old.length * 2];
+    shift--;
+    size = 0;
+    for (int slot = 0; slot < old.length; slot += 2) {
+      if (old[slot] != null) set(old[slot], old[slot + 1]);
+    }
+  }
+
+  private static void checkKey(Object key) {
+    if (key == null) throw new NativeError("Map keys can't be nil.");
+  }
+
+  private static final NativeMethod<LoxMap> HAS = new NativeMethod<>(
+      "has", 1, (map, interpreter, arguments) -> map.has(arguments.get(0)));
+  private static final NativeMethod<LoxMap> GET = new NativeMethod<>(
+      "get", 1, (map, interpreter, arguments) -> map.get(arguments.get(0)));
+  private static final NativeMethod<LoxMap> SET = new NativeMethod<>(
+      "set", 2, (map, interpreter, arguments) -> {
+        map.set(arguments.get(0), arguments.get(1));
+        return null;
+      });
+  private static final NativeMethod<LoxMap> DELETE = new NativeMethod<>(
+      "delete", 1,
+      (map, interpreter, arguments) -> map.delete(arguments.get(0)));
+  private static final NativeMethod<LoxMap> KEYS = new NativeMethod<>(
+      "keys", 0, (map, interpreter, arguments) -> map.keys());
+  private static final NativeMethod<LoxMap> VALUES = new NativeMethod<>(
+      "values", 0, (map, interpreter, arguments) -> map.values());
+
+  @Override
+  public NativeMethod<?> method(String name) {
+    return switch (name) {
+      case "has" -> HAS;
+      case "get" -> GET;
+      case "set" -> SET;
+      case "delete" -> DELETE;
+      case "keys" -> KEYS;
+      case "values" -> VALUES;
+      default -> null;
+    };
+  }
+
+  @Override
+  public Object property(Token name) {
+    if (name.lexeme.equals("size")) return (double)size;
+    throw NativeObject.undefined(name);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder("{");
+    for (int slot = 0; slot < table.length; slot += 2) {
+      if (table[slot] == null) continue;
+
+      if (text.length() > 1) text.append(", ");
+      text.append(show(table[slot])).append(": ")
+          .append(show(table[slot + 1]));
+    }
+    return text.append("}").toString();
+  }
+
+  private String show(Object value) {
+    return value == this ? "{...}" : Interpreter.stringify(value);
+  }
+}
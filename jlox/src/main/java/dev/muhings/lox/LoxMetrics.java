@@ -0,0 +1,151 @@
+package dev.muhings.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Interpreter counters for monitoring jlox inside a long-running JVM,
+ * published over JMX when the JVM is started with -Djlox.metrics=true.
+ *
+ * The flag is read once into a static final field, so when metrics are
+ * off the JIT removes the checks and the hot paths are untouched. When
+ * they are on, every counter is a LongAdder, which spreads increments
+ * from different threads over separate cells instead of contending on
+ * one word.
+ */
+final class LoxMetrics implements LoxMetricsMBean {
+  static final boolean ENABLED = Boolean.getBoolean("jlox.metrics");
+
+  private static final LongAdder statements = new LongAdder();
+  private static final LongAdder calls = new LongAdder();
+  private static final LongAdder environments = new LongAdder();
+  private static final LongAdder instances = new LongAdder();
+  private static final LongAdder propertyLookups = new LongAdder();
+  private static final LongAdder methodMisses = new LongAdder();
+  private static final LongAdder runtimeErrors = new LongAdder();
+  private static final LongAdder[] phaseNanos =
+      new LongAdder[Phase.values().length];
+
+  static {
+    for (int i = 0; i < phaseNanos.length; i++) {
+      phaseNanos[i] = new LongAdder();
+    }
+  }
+
+  static {
+    if (ENABLED) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(
+            new LoxMetrics(),
+            new ObjectName("dev.muhings.lox:type=Interpreter"));
+      } catch (JMException e) {
+        System.err.println("Could not register jlox metrics: " +
+                           e.getMessage());
+      }
+    }
+  }
+
+  private LoxMetrics() {}
+
+  static void statementExecuted() {
+    if (ENABLED) statements.increment();
+  }
+
+  static void functionCalled() {
+    if (ENABLED) calls.increment();
+  }
+
+  static void environmentAllocated() {
+    if (ENABLED) environments.increment();
+  }
+
+  static void instanceCreated() {
+    if (ENABLED) instances.increment();
+  }
+
+  static void propertyLookedUp() {
+    if (ENABLED) propertyLookups.increment();
+  }
+
+  // A class that did not define the method itself, so the lookup went on
+  // to its superclass or failed.
+  static void methodLookupMissed() {
+    if (ENABLED) methodMisses.increment();
+  }
+
+  static void runtimeError() {
+    if (ENABLED) runtimeErrors.increment();
+  }
+
+  static void phase(Phase phase, long nanos) {
+    if (ENABLED) phaseNanos[phase.ordinal()].add(nanos);
+  }
+
+  @Override
+  public long getStatementsExecuted() {
+    return statements.sum();
+  }
+
+  @Override
+  public long getFunctionCalls() {
+    return calls.sum();
+  }
+
+  @Override
+  public long getEnvironmentsAllocated() {
+    return environments.sum();
+  }
+
+  @Override
+  public long getInstancesCreated() {
+    return instances.sum();
+  }
+
+  @Override
+  public long getPropertyLookups() {
+    return propertyLookups.sum();
+  }
+
+  @Override
+  public long getMethodLookupMisses() {
+    return methodMisses.sum();
+  }
+
+  @Override
+  public long getRuntimeErrors() {
+    return runtimeErrors.sum();
+  }
+
+  @Override
+  public long getScanNanos() {
+    return phaseNanos[Phase.SCAN.ordinal()].sum();
+  }
+
+  @Override
+  public long getParseNanos() {
+    return phaseNanos[Phase.PARSE.ordinal()].sum();
+  }
+
+  @Override
+  public long getResolveNanos() {
+    return phaseNanos[Phase.RESOLVE.ordinal()].sum();
+  }
+
+  @Override
+  public long getExecuteNanos() {
+    return phaseNanos[Phase.EXECUTE.ordinal()].sum();
+  }
+
+  @Override
+  public void reset() {
+    for (LongAdder counter : new LongAdder[] {
+        statements, calls, environments, instances, propertyLookups,
+        methodMisses, runtimeErrors }) {
+      counter.reset();
+    }
+    for (LongAdder nanos : phaseNanos) nanos.reset();
+  }
+}
@@ -0,0 +1,33 @@
+package dev.muhings.lox;
+
+/**
+ * The management interface of {@link LoxMetrics}, registered as
+ * "dev.muhings.lox:type=Interpreter". Counts are totals over every
+ * interpreter in the JVM since start or the last reset; phase times are
+ * in nanoseconds.
+ */
+public interface LoxMetricsMBean {
+  long getStatementsExecuted();
+
+  long getFunctionCalls();
+
+  long getEnvironmentsAllocated();
+
+  long getInstancesCreated();
+
+  long getPropertyLookups();
+
+  long getMethodLookupMisses();
+
+  long getRuntimeErrors();
+
+  long getScanNanos();
+
+  long getParseNanos();
+
+  long getResolveNanos();
+
+  long getExecuteNanos();
+
+  void reset();
+}
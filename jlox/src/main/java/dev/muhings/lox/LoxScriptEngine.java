@@ -0,0 +1,275 @@
+package dev.muhings.lox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+/**
+ * The javax.script engine for Lox. It keeps one interpreter, so functions
+ * and classes defined by one eval can be used by the next and called from
+ * Java through {@link Invocable}. Before every eval the global and engine
+ * bindings of the context are copied into the Lox globals, with Java
+ * numbers turned into Lox numbers, and afterwards the globals the script
+ * defined are copied back into the engine bindings. Print statements go
+ * to the context's writer, through a sink that is kept for as long as
+ * the writer stays the same.
+ *
+ * {@link #compile} parses and resolves a script once through
+ * {@link LoxEngine}; evaluating the result does not touch the source
+ * again. Lox has no expression statements with values, so eval returns
+ * null.
+ */
+public class LoxScriptEngine extends AbstractScriptEngine
+    implements Compilable, Invocable {
+  private final ScriptEngineFactory factory;
+  private final LoxEngine engine = new LoxEngine();
+  private final Interpreter interpreter = new Interpreter((OutputSink)null);
+  private Writer sinkWriter = null;
+
+  LoxScriptEngine(ScriptEngineFactory factory) {
+    this.factory = factory;
+  }
+
+  @Override
+  public ScriptEngineFactory getFactory() {
+    return factory;
+  }
+
+  @Override
+  public Bindings createBindings() {
+    return new SimpleBindings();
+  }
+
+  @Override
+  public Object eval(String script, ScriptContext context)
+      throws ScriptException {
+    return compile(script).eval(context);
+  }
+
+  @Override
+  public Object eval(Reader reader, ScriptContext context)
+      throws ScriptException {
+    return compile(reader).eval(context);
+  }
+
+  @Override
+  public javax.script.CompiledScript compile(String script)
+      throws ScriptException {
+    try {
+      return new Compiled(engine.compile(script));
+    } catch (LoxException e) {
+      throw scriptException(e);
+    }
+  }
+
+  @Override
+  public javax.script.CompiledScript compile(Reader reader)
+      throws ScriptException {
+    StringWriter source = new StringWriter();
+    try {
+      reader.transferTo(source);
+    } catch (IOException e) {
+      throw new ScriptException(e);
+    }
+
+    return compile(source.toString());
+  }
+
+  private class Compiled extends javax.script.CompiledScript {
+    private final CompiledScript script;
+
+    Compiled(CompiledScript script) {
+      this.script = script;
+    }
+
+    @Override
+    public Object eval(ScriptContext context) throws ScriptException {
+      run(script, context);
+      return null;
+    }
+
+    @Override
+    public LoxScriptEngine getEngine() {
+      return LoxScriptEngine.this;
+    }
+  }
+
+  private synchronized void run(CompiledScript script, ScriptContext context)
+      throws ScriptException {
+    importBindings(context.getBindings(ScriptContext.GLOBAL_SCOPE));
+    importBindings(context.getBindings(ScriptContext.ENGINE_SCOPE));
+
+    OutputSink out = output(context.getWriter());
+    try {
+      script.run(interpreter);
+    } catch (LoxException e) {
+      throw scriptException(e);
+    } finally {
+      out.flush();
+      exportBindings(context.getBindings(ScriptContext.ENGINE_SCOPE));
+    }
+  }
+
+  // Each sink has a 64K character buffer, so it is only replaced when
+  // print statements have to go to another writer.
+  private OutputSink output(Writer writer) {
+    if (writer != sinkWriter) {
+      if (interpreter.out != null) interpreter.out.close();
+      sinkWriter = writer;
+      interpreter.out = new OutputSink(writer, OutputSink.Flush.LINE);
+    }
+
+    return interpreter.out;
+  }
+
+  private void importBindings(Bindings bindings) {
+    if (bindings == null) return;
+
+    for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+      interpreter.globals.define(binding.getKey(), toLox(binding.getValue()));
+    }
+  }
+
+  private void exportBindings(Bindings bindings) {
+    for (Map.Entry<String, Object> global :
+         interpreter.globals.values().entrySet()) {
+      if (!(global.getValue() instanceof NativeFunction)) {
+        bindings.put(global.getKey(), Environment.unwrap(global.getValue()));
+      }
+    }
+  }
+
+  @Override
+  public synchronized Object invokeFunction(String name, Object... arguments)
+      throws ScriptException, NoSuchMethodException {
+    Object function = interpreter.globals.values().get(name);
+    if (!(function instanceof LoxCallable callable)) {
+      throw new NoSuchMethodException("No Lox function '" + name + "'.");
+    }
+
+    return call(callable, name, arguments);
+  }
+
+  @Override
+  public synchronized Object invokeMethod(Object object, String name,
+                                          Object... arguments)
+      throws ScriptException, NoSuchMethodException {
+    if (!(object instanceof LoxInstance instance)) {
+      throw new IllegalArgumentException("Not a Lox instance: " + object);
+    }
+
+    Object method;
+    try {
+      method = instance.get(new Token(TokenType.IDENTIFIER, name, null, 0));
+    } catch (RuntimeError e) {
+      throw new NoSuchMethodException(e.getMessage());
+    }
+
+    if (!(method instanceof LoxCallable callable)) {
+      throw new NoSuchMethodException("'" + name + "' is not a method.");
+    }
+
+    return call(callable, name, arguments);
+  }
+
+  private Object call(LoxCallable callable, String name, Object[] arguments)
+      throws ScriptException {
+    int count = arguments == null ? 0 : arguments.length;
+    if (count != callable.arity()) {
+      throw new ScriptException("'" + name + "' expects " +
+          callable.arity() + " arguments but got " + count + ".");
+    }
+
+    List<Object> values = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) values.add(toLox(arguments[i]));
+
+    output(getContext().getWriter());
+    try {
+      return callable.call(interpreter, values);
+    } catch (RuntimeError e) {
+      throw scriptException(new LoxException(
+          List.of(Diagnostic.runtime(e))));
+    } catch (NativeError e) {
+      throw new ScriptException(e.getMessage());
+    } finally {
+      interpreter.out.flush();
+    }
+  }
+
+  @Override
+  public <T> T getInterface(Class<T> type) {
+    return implement(type, null);
+  }
+
+  @Override
+  public <T> T getInterface(Object object, Class<T> type) {
+    if (!(object instanceof LoxInstance)) {
+      throw new IllegalArgumentException("Not a Lox instance: " + object);
+    }
+
+    return implement(type, object);
+  }
+
+  // Calls the Lox function, or method of the instance, with the name of
+  // each interface method.
+  private <T> T implement(Class<T> type, Object instance) {
+    if (type == null || !type.isInterface()) {
+      throw new IllegalArgumentException("Not an interface: " + type);
+    }
+
+    Object proxy = Proxy.newProxyInstance(type.getClassLoader(),
+        new Class<?>[] { type }, (self, method, arguments) -> {
+          if (method.getDeclaringClass() == Object.class) {
+            return objectMethod(self, method, arguments);
+          }
+
+          return instance == null ?
+              invokeFunction(method.getName(), arguments) :
+              invokeMethod(instance, method.getName(), arguments);
+        });
+    return type.cast(proxy);
+  }
+
+  private static Object objectMethod(Object self, Method method,
+                                     Object[] arguments) {
+    return switch (method.getName()) {
+      case "equals" -> self == arguments[0];
+      case "hashCode" -> System.identityHashCode(self);
+      default -> "Lox proxy for " + self.getClass().getInterfaces()[0];
+    };
+  }
+
+  // Lox only knows doubles, booleans, strings and its own objects.
+  private static Object toLox(Object value) {
+    if (value instanceof Double || value instanceof Boolean ||
+        value instanceof String) {
+      return value;
+    }
+    if (value instanceof Number number) return number.doubleValue();
+    if (value instanceof Character character) return character.toString();
+    return value;
+  }
+
+  private static ScriptException scriptException(LoxException e) {
+    Diagnostic first = e.diagnostics().get(0);
+    ScriptException exception = new ScriptException(e.getMessage(),
+        null, first.line());
+    exception.initCause(e);
+    return exception;
+  }
+}
@@ -0,0 +1,93 @@
+package dev.muhings.lox;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+/**
+ * Makes Lox available through javax.script under the names "lox" and
+ * "jlox" and the extension ".lox". It is registered in
+ * META-INF/services, so ScriptEngineManager finds it on the class path.
+ */
+public class LoxScriptEngineFactory implements ScriptEngineFactory {
+  private static final String ENGINE_NAME = "jlox";
+  private static final String ENGINE_VERSION = "1.0";
+  private static final String LANGUAGE_NAME = "Lox";
+  private static final String LANGUAGE_VERSION = "1.0";
+
+  @Override
+  public String getEngineName() {
+    return ENGINE_NAME;
+  }
+
+  @Override
+  public String getEngineVersion() {
+    return ENGINE_VERSION;
+  }
+
+  @Override
+  public List<String> getExtensions() {
+    return List.of("lox");
+  }
+
+  @Override
+  public List<String> getMimeTypes() {
+    return List.of("application/x-lox", "text/x-lox");
+  }
+
+  @Override
+  public List<String> getNames() {
+    return List.of("lox", "Lox", "jlox");
+  }
+
+  @Override
+  public String getLanguageName() {
+    return LANGUAGE_NAME;
+  }
+
+  @Override
+  public String getLanguageVersion() {
+    return LANGUAGE_VERSION;
+  }
+
+  @Override
+  public Object getParameter(String key) {
+    return switch (key) {
+      case ScriptEngine.ENGINE -> ENGINE_NAME;
+      case ScriptEngine.ENGINE_VERSION -> ENGINE_VERSION;
+      case ScriptEngine.NAME -> ENGINE_NAME;
+      case ScriptEngine.LANGUAGE -> LANGUAGE_NAME;
+      case ScriptEngine.LANGUAGE_VERSION -> LANGUAGE_VERSION;
+      // An engine keeps one interpreter, so it is not safe to share
+      // between threads; LoxEngine is.
+      default -> null;
+    };
+  }
+
+  @Override
+  public String getMethodCallSyntax(String object, String method,
+                                    String... arguments) {
+    return object + "." + method + "(" + String.join(", ", arguments) + ")";
+  }
+
+  @Override
+  public String getOutputStatement(String toDisplay) {
+    // Lox strings have no escapes, so there is no way to print a quote.
+    return "print \"" + toDisplay + "\";";
+  }
+
+  @Override
+  public String getProgram(String... statements) {
+    return List.of(statements).stream()
+        .map(statement -> statement.endsWith(";") || statement.endsWith("}") ?
+             statement : statement + ";")
+        .collect(Collectors.joining("\n"));
+  }
+
+  @Override
+  public ScriptEngine getScriptEngine() {
+    return new LoxScriptEngine(this);
+  }
+}
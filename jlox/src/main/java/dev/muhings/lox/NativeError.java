@@ -0,0 +1,9 @@
+package dev.muhings.lox;
+
+// Thrown by natives, which have no token of their own; the interpreter
+// turns it into a RuntimeError at the call site.
+class NativeError extends RuntimeException {
+  NativeError(String message) {
+    super(message, null, false, false);
+  }
+}
@@ -0,0 +1,67 @@
+package dev.muhings.lox;
+
+import java.util.List;
+
+/**
+ * A Lox function written in Java. The interpreter checks the arity before
+ * calling the body; the body checks the argument types with the helpers
+ * below, which throw {@link NativeError}. The interpreter turns that into
+ * a RuntimeError at the call site, since natives have no token of their
+ * own to blame.
+ */
+class NativeFunction implements LoxCallable {
+  interface Body {
+    Object call(Interpreter interpreter, List<Object> arguments);
+  }
+
+  final String name;
+  private final int arity;
+  private final Body body;
+
+  NativeFunction(String name, int arity, Body body) {
+    this.name = name;
+    this.arity = arity;
+    this.body = body;
+  }
+
+  @Override
+  public int arity() {
+    return arity;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, List<Object> arguments) {
+    return body.call(interpreter, arguments);
+  }
+
+  @Override
+  public String toString() {
+    return "<native fn>";
+  }
+
+  static double number(Object value, String what) {
+    if (value instanceof Double number) return number;
+    throw new NativeError(what + " must be a number.");
+  }
+
+  static int count(Object value, int minimum, String what) {
+    double number = number(value, what);
+    if (number < minimum || number != Math.floor(number) ||
+        number > Integer.MAX_VALUE) {
+      throw new NativeError(what + " must be a whole number of at least " +
+                      minimum + ".");
+    }
+
+    return (int)number;
+  }
+
+  static LoxCallable function(Object value, int arity, String what) {
+    if (value instanceof LoxCallable function &&
+        function.arity() == arity) {
+      return function;
+    }
+
+    throw new NativeError(what + " must be a function taking " + arity +
+                    (arity == 1 ? " argument." : " arguments."));
+  }
+}
@@ -0,0 +1,39 @@
+package dev.muhings.lox;
+
+import java.util.List;
+
+/**
+ * A method of a kind of {@link NativeObject}, made once and shared by
+ * every object of the kind. The interpreter calls it with the object for
+ * obj.method(arguments), so a call allocates nothing; only a method taken
+ * as a value, as in var f = obj.method;, is bound into a NativeFunction.
+ * Like a native function, the body reports bad arguments by throwing
+ * {@link NativeError}.
+ */
+final class NativeMethod<T extends NativeObject> {
+  interface Body<T> {
+    Object call(T self, Interpreter interpreter, List<Object> arguments);
+  }
+
+  final String name;
+  final int arity;
+  private final Body<T> body;
+
+  NativeMethod(String name, int arity, Body<T> body) {
+    this.name = name;
+    this.arity = arity;
+    this.body = body;
+  }
+
+  // The object always comes from its own class's method(), so it is a T.
+  @SuppressWarnings("unchecked")
+  Object call(NativeObject self, Interpreter interpreter,
+              List<Object> arguments) {
+    return body.call((T)self, interpreter, arguments);
+  }
+
+  NativeFunction bind(NativeObject self) {
+    return new NativeFunction(name, arity,
+        (interpreter, arguments) -> call(self, interpreter, arguments));
+  }
+}
@@ -0,0 +1,29 @@
+package dev.muhings.lox;
+
+/**
+ * A value made by native code that scripts use through its methods, like
+ * the tasks spawn() returns. The methods are {@link NativeMethod}s shared
+ * by the whole class; getting one as a property binds it to the object.
+ * A few objects also have plain properties, like an array's length.
+ * Native objects have no fields, so setting one is an error like it is
+ * for other values.
+ */
+interface NativeObject {
+  // The method with this name, or null if there is none.
+  NativeMethod<?> method(String name);
+
+  // A property that is not a method.
+  default Object property(Token name) {
+    throw undefined(name);
+  }
+
+  default Object get(Token name) {
+    NativeMethod<?> method = method(name.lexeme);
+    return method != null ? method.bind(this) : property(name);
+  }
+
+  static RuntimeError undefined(Token name) {
+    return new RuntimeError(name,
+        "Undefined property '" + name.lexeme + "'.");
+  }
+}
@@ -0,0 +1,194 @@
+package dev.muhings.lox;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The native functions every Lox program starts with.
+ */
+final class Natives {
+  // Every timed call of bench() keeps its time, 8 bytes each.
+  private static final int MAX_BENCH_ITERATIONS = 10_000_000;
+
+  private Natives() {}
+
+  static void define(Environment globals) {
+    define(globals, "clock", 0, (interpreter, arguments) ->
+        (double)System.currentTimeMillis() / 1000.0);
+
+    define(globals, "nanos", 0, (interpreter, arguments) ->
+        (double)System.nanoTime());
+
+    define(globals, "heapHistogram", 0, (interpreter, arguments) -> {
+      StringWriter text = new StringWriter();
+      HeapHistogram.print(interpreter, new PrintWriter(text));
+      interpreter.out.print(text.toString());
+      return null;
+    });
+
+    define(globals, "flush", 0, (interpreter, arguments) -> {
+      interpreter.out.flush();
+      return null;
+    });
+
+    define(globals, "bench", 3, Natives::bench);
+
+    define(globals, "spawn", 1, (interpreter, arguments) -> {
+      if (interpreter.budget != null) {
+        throw new NativeError("Can't spawn tasks in an isolate.");
+      }
+
+      return Task.spawn(interpreter,
+          NativeFunction.function(arguments.get(0), 0, "Task body"));
+    });
+
+    define(globals, "channel", 1, (interpreter, arguments) ->
+        new Channel(NativeFunction.count(arguments.get(0), 1,
+                                         "Channel capacity")));
+
+    define(globals, "parallelFor", 3, (interpreter, arguments) -> {
+      ParallelLoop.forRange(interpreter,
+          whole(arguments.get(0), "Start"), whole(arguments.get(1), "End"),
+          NativeFunction.function(arguments.get(2), 1, "Loop body"));
+      return null;
+    });
+
+    define(globals, "parallelMap", 2, (interpreter, arguments) -> {
+      if (!(arguments.get(0) instanceof LoxArray array)) {
+        throw new NativeError("First argument must be an array.");
+      }
+
+      return ParallelLoop.map(interpreter, array,
+          NativeFunction.function(arguments.get(1), 1, "Mapping function"));
+    });
+
+    define(globals, "openLines", 1, (interpreter, arguments) ->
+        FileInput.open(path(arguments.get(0)), 0));
+
+    define(globals, "openChunks", 2, (interpreter, arguments) ->
+        FileInput.open(path(arguments.get(0)),
+            NativeFunction.count(arguments.get(1), 1, "Chunk size")));
+
+    define(globals, "openWriter", 1, (interpreter, arguments) ->
+        FileOutput.open(path(arguments.get(0))));
+
+    define(globals, "Buffer", 1, (interpreter, arguments) -> {
+      long length = whole(arguments.get(0), "Length");
+      if (length < 0) {
+        throw new NativeError("Length must not be negative.");
+      }
+
+      return LoxBuffer.allocate(length);
+    });
+
+    define(globals, "mapBuffer", 2, (interpreter, arguments) ->
+        LoxBuffer.map(path(arguments.get(0)),
+                      Interpreter.isTruthy(arguments.get(1))));
+
+    define(globals, "Map", 0, (interpreter, arguments) -> new LoxMap());
+
+    define(globals, "Array", 1, (interpreter, arguments) ->
+        LoxArray.zeros(NativeFunction.count(arguments.get(0), 0, "Length")));
+
+    BulkMath.define(globals);
+  }
+
+  private static void define(Environment globals, String name, int arity,
+                             NativeFunction.Body body) {
+    globals.define(name, new NativeFunction(name, arity, body));
+  }
+
+  private static Path path(Object value) {
+    if (value instanceof String path) return Path.of(path);
+    throw new NativeError("Path must be a string.");
+  }
+
+  private static long whole(Object value, String what) {
+    double number = NativeFunction.number(value, what);
+    if (number != Math.floor(number) || Math.abs(number) > 0x1p53) {
+      throw new NativeError(what + " must be a whole number.");
+    }
+
+    return (long)number;
+  }
+
+  // bench(name, fn, iterations) calls fn a tenth as many times again to
+  // warm up, then times every call and prints robust statistics: the
+  // quartiles, and the mean and deviation of the calls that are not
+  // outliers by Tukey's fences. Returns the median in nanoseconds.
+  private static Object bench(Interpreter interpreter,
+                              List<Object> arguments) {
+    String name = Interpreter.stringify(arguments.get(0));
+    LoxCallable body =
+        NativeFunction.function(arguments.get(1), 0, "Benchmark body");
+    int iterations =
+        NativeFunction.count(arguments.get(2), 1, "Iterations");
+    if (iterations > MAX_BENCH_ITERATIONS) {
+      throw new NativeError(
+          "Iterations must be at most " + MAX_BENCH_ITERATIONS + ".");
+    }
+
+    List<Object> none = List.of();
+    int warmup = Math.max(1, iterations / 10);
+    for (int i = 0; i < warmup; i++) body.call(interpreter, none);
+
+    long[] times = new long[iterations];
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      body.call(interpreter, none);
+      times[i] = System.nanoTime() - start;
+    }
+
+    Arrays.sort(times);
+    double median = quantile(times, 0.5);
+    double lower = quantile(times, 0.25);
+    double upper = quantile(times, 0.75);
+    double fence = 1.5 * (upper - lower);
+
+    long kept = 0;
+    double sum = 0;
+    for (long time : times) {
+      if (time >= lower - fence && time <= upper + fence) {
+        kept++;
+        sum += time;
+      }
+    }
+
+    double mean = sum / kept;
+    double squares = 0;
+    for (long time : times) {
+      if (time >= lower - fence && time <= upper + fence) {
+        squares += (time - mean) * (time - mean);
+      }
+    }
+    double deviation = kept > 1 ? Math.sqrt(squares / (kept - 1)) : 0;
+
+    interpreter.out.print(String.format(Locale.ROOT,
+        "bench %s: %d runs after %d warm-up, median %s, quartiles %s..%s, " +
+        "min %s, mean %s +/- %s, %d outliers%n",
+        name, iterations, warmup, duration(median), duration(lower),
+        duration(upper), duration(times[0]), duration(mean),
+        duration(deviation), iterations - kept));
+
+    return median;
+  }
+
+  // Linear interpolation between the closest ranks.
+  private static double quantile(long[] sorted, double q) {
+    double rank = q * (sorted.length - 1);
+    int below = (int)Math.floor(rank);
+    int above = Math.min(below + 1, sorted.length - 1);
+    return sorted[below] + (rank - below) * (sorted[above] - sorted[below]);
+  }
+
+  private static String duration(double nanos) {
+    if (nanos < 1e3) return String.format(Locale.ROOT, "%.0f ns", nanos);
+    if (nanos < 1e6) return String.format(Locale.ROOT, "%.2f us", nanos / 1e3);
+    if (nanos < 1e9) return String.format(Locale.ROOT, "%.2f ms", nanos / 1e6);
+    return String.format(Locale.ROOT, "%.2f s", nanos / 1e9);
+  }
+}
@@ -0,0 +1,115 @@
+package dev.muhings.lox;
+
+/**
+ * Formats numbers the way print shows them: the shortest decimal that
+ * reads back as the same double, as Double.toString writes it, without
+ * a trailing ".0". Whole numbers and numbers with a few decimals, which
+ * is what scripts mostly print, are written digit by digit into a char
+ * array without allocating. Everything else, full-precision fractions,
+ * exponent forms, NaN and the infinities, goes through Double.toString.
+ *
+ * A number with a few decimals is found by scaling it by 10, 100, ...
+ * and rounding until the digits divide back to the same double. The
+ * division is correctly rounded, so it reads the digits back exactly
+ * like Double.parseDouble would. The first scale where that works gives
+ * the fewest digits; if two adjacent digit strings could both work
+ * there and the closer one is not obvious, Double.toString decides.
+ */
+final class NumberText {
+  // The longest text write() produces: a sign, "0.", two zeros after the
+  // point and 16 digits.
+  static final int MAX_LENGTH = 24;
+
+  // Double.toString switches to exponent form outside [10^-3, 10^7).
+  private static final double PLAIN_MIN = 1e-3;
+  private static final double PLAIN_MAX = 1e7;
+
+  // Scaled values stay below this so that rounding the product is off
+  // by at most 1/16.
+  private static final double MAX_DIGITS = 0x1p50;
+  private static final double CLOSE = 7.0 / 16.0;
+  private static final long MANTISSA = 0x000FFFFFFFFFFFFFL;
+
+  private static final double[] POWERS = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+    1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+  };
+
+  private NumberText() {}
+
+  static String format(double value) {
+    char[] text = new char[MAX_LENGTH];
+    int end = write(value, text, 0);
+    return end < 0 ? Double.toString(value) : new String(text, 0, end);
+  }
+
+  // Writes the number at offset, which must leave room for MAX_LENGTH
+  // characters, and returns the offset after it, or -1 if the number
+  // needs Double.toString.
+  static int write(double value, char[] text, int offset) {
+    double magnitude = Math.abs(value);
+    if (!(magnitude < PLAIN_MAX)) return -1;
+
+    boolean negative = Double.doubleToRawLongBits(value) < 0;
+    if (magnitude == Math.rint(magnitude)) {
+      if (negative) text[offset++] = '-';
+      return writeDigits((long)magnitude, text, offset);
+    }
+    if (magnitude < PLAIN_MIN) return -1;
+
+    // Only at a power of two are the doubles below closer than the ones
+    // above, so that the nearest digits can fail while the next work.
+    boolean powerOfTwo =
+        (Double.doubleToRawLongBits(magnitude) & MANTISSA) == 0;
+    for (int scale = 1; scale < POWERS.length; scale++) {
+      double power = POWERS[scale];
+      double scaled = magnitude * power;
+      if (scaled >= MAX_DIGITS) return -1;
+
+      double digits = Math.rint(scaled);
+      double gap = scaled - digits;
+      double next = digits + Math.signum(gap);
+      if (digits / power == magnitude) {
+        if (Math.abs(gap) < CLOSE || next / power != magnitude) {
+          return writeDecimal(negative, (long)digits, scale, text, offset);
+        }
+        return -1;
+      }
+
+      if ((Math.abs(gap) >= CLOSE || powerOfTwo) && gap != 0 &&
+          next / power == magnitude) {
+        return writeDecimal(negative, (long)next, scale, text, offset);
+      }
+    }
+
+    return -1;
+  }
+
+  private static int writeDecimal(boolean negative, long digits, int scale,
+                                  char[] text, int offset) {
+    if (negative) text[offset++] = '-';
+
+    long unit = (long)POWERS[scale];
+    offset = writeDigits(digits / unit, text, offset);
+    text[offset++] = '.';
+
+    long fraction = digits % unit;
+    for (int i = offset + scale - 1; i >= offset; i--) {
+      text[i] = (char)('0' + fraction % 10);
+      fraction /= 10;
+    }
+    return offset + scale;
+  }
+
+  private static int writeDigits(long number, char[] text, int offset) {
+    int length = 1;
+    for (long rest = number / 10; rest != 0; rest /= 10) length++;
+
+    int end = offset + length;
+    for (int i = end - 1; i >= offset; i--) {
+      text[i] = (char)('0' + number % 10);
+      number /= 10;
+    }
+    return end;
+  }
+}
@@ -0,0 +1,169 @@
+package dev.muhings.lox;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where print statements go: a 64 KB character buffer in front of a
+ * Writer, shared by all tasks of a program. Every print is copied into
+ * the buffer whole under the sink's lock, so lines of different tasks
+ * never mix, and numbers are formatted straight into it by NumberText.
+ * When the buffer reaches the writer depends on the flush policy:
+ *
+ *   LINE      after every print, for the prompt and for writers that
+ *             someone watches as the script runs;
+ *   PERIODIC  when the buffer is full and otherwise every 100 ms, so a
+ *             long script on a terminal still shows its progress;
+ *   FULL      only when the buffer is full or on flush(), for output to
+ *             files and pipes.
+ *
+ * The flush() native flushes under every policy, and the standard output
+ * sink is flushed when the JVM exits. close() flushes the sink for the
+ * last time and stops its periodic flush and exit hook, but leaves the
+ * writer open. Like PrintWriter, the sink does not throw when the writer
+ * fails: a closed pipe stops the output, not the script.
+ */
+final class OutputSink {
+  enum Flush { LINE, PERIODIC, FULL }
+
+  private static final int BUFFER = 64 << 10;
+  private static final long PERIOD_MILLIS = 100;
+  private static final String NEWLINE = System.lineSeparator();
+
+  // Started by the first periodic sink. Closed sinks take their task out
+  // of the queue.
+  private static final class Ticker {
+    static final ScheduledThreadPoolExecutor timer =
+        new ScheduledThreadPoolExecutor(1, runnable -> {
+          Thread thread = new Thread(runnable, "lox-output-flush");
+          thread.setDaemon(true);
+          return thread;
+        });
+
+    static {
+      timer.setRemoveOnCancelPolicy(true);
+    }
+  }
+
+  private final Writer target;
+  private final Flush policy;
+  // Allocated by the first print, so an interpreter that never prints,
+  // such as one that only resolves, does not pay for it.
+  private char[] buffer = null;
+  private int count = 0;
+  private boolean failed = false;
+  private ScheduledFuture<?> ticking = null;
+  private Thread exitHook = null;
+
+  OutputSink(Writer target, Flush policy) {
+    this.target = target;
+    this.policy = policy;
+    if (policy == Flush.PERIODIC) {
+      ticking = Ticker.timer.scheduleWithFixedDelay(this::flushPending,
+          PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  // System.out in its own encoding, without its per-call locking and
+  // flushing; only whole buffers go through it.
+  static OutputSink standardOutput(Flush policy) {
+    String encoding = System.getProperty("stdout.encoding");
+    Charset charset = encoding != null ?
+        Charset.forName(encoding) : Charset.defaultCharset();
+    OutputSink sink = new OutputSink(
+        new OutputStreamWriter(System.out, charset), policy);
+    if (policy != Flush.LINE) {
+      sink.exitHook = new Thread(sink::flush, "lox-output-exit");
+      Runtime.getRuntime().addShutdownHook(sink.exitHook);
+    }
+    return sink;
+  }
+
+  // One print statement.
+  synchronized void printLine(Object value) {
+    if (value instanceof Double number) {
+      appendNumber(number);
+    } else {
+      append(Interpreter.stringify(value));
+    }
+    append(NEWLINE);
+    if (policy == Flush.LINE) flush();
+  }
+
+  synchronized void print(String text) {
+    append(text);
+    if (policy == Flush.LINE) flush();
+  }
+
+  synchronized void flush() {
+    drain();
+    try {
+      target.flush();
+    } catch (IOException e) {
+      failed = true;
+    }
+  }
+
+  synchronized void close() {
+    flush();
+    if (ticking != null) {
+      ticking.cancel(false);
+      ticking = null;
+    }
+    if (exitHook != null) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(exitHook);
+      } catch (IllegalStateException e) {
+        // The JVM is exiting and runs the hook anyway.
+      }
+      exitHook = null;
+    }
+  }
+
+  private synchronized void flushPending() {
+    if (count > 0) flush();
+  }
+
+  private void appendNumber(double value) {
+    if (buffer == null) buffer = new char[BUFFER];
+    if (buffer.length - count < NumberText.MAX_LENGTH) drain();
+
+    int end = NumberText.write(value, buffer, count);
+    if (end >= 0) {
+      count = end;
+    } else {
+      append(Double.toString(value));
+    }
+  }
+
+  private void append(String text) {
+    if (buffer == null) buffer = new char[BUFFER];
+    int length = text.length();
+    for (int start = 0; start < length; ) {
+      if (count == buffer.length) drain();
+
+      int end = Math.min(length, start + buffer.length - count);
+      text.getChars(start, end, buffer, count);
+      count += end - start;
+      start = end;
+    }
+  }
+
+  // Hands the buffer to the writer; after a failure it is dropped.
+  private void drain() {
+    if (count == 0) return;
+    if (!failed) {
+      try {
+        target.write(buffer, 0, count);
+      } catch (IOException e) {
+        failed = true;
+      }
+    }
+    count = 0;
+  }
+}
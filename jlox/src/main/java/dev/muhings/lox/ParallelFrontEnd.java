@@ -0,0 +1,209 @@
+package dev.muhings.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scans and parses a large source on a {@link ForkJoinPool}.
+ *
+ * The source is first cut into segments at top-level statement
+ * boundaries: after a ';' or '}' that closes every open bracket and is
+ * followed by a keyword that can only start a new declaration. Strings and
+ * comments are skipped while looking for those boundaries. Every segment
+ * is then scanned and parsed on its own with the line number it starts
+ * on, and the statement lists are stitched back together in order.
+ * Errors are buffered per segment and replayed in source order, scanner
+ * errors of every segment before any parse error, so the output matches
+ * a sequential run, which scans the whole source before parsing it.
+ */
+class ParallelFrontEnd {
+  // Smaller segments cost more in task overhead than they save.
+  static final int MIN_SEGMENT_LENGTH = 256 * 1024;
+
+  private static final Set<String> declarationKeywords = Set.of(
+      "class", "fun", "var", "for", "if", "print", "while");
+
+  private final String source;
+  private final boolean lazy;
+  private final List<Segment> segments = new ArrayList<>();
+
+  private ParallelFrontEnd(String source, boolean lazy) {
+    this.source = source;
+    this.lazy = lazy;
+  }
+
+  static List<Stmt> parse(String source, ErrorReporter reporter,
+                          boolean lazy) {
+    int parallelism = ForkJoinPool.getCommonPoolParallelism();
+    int segmentLength = parallelism > 1 ?
+        Math.max(MIN_SEGMENT_LENGTH, source.length() / (parallelism * 4)) : 0;
+    return parse(source, reporter, lazy, segmentLength);
+  }
+
+  // Cuts segments of at least segmentLength characters, or none if it is
+  // zero. Tests pass a few characters to split at every boundary.
+  static List<Stmt> parse(String source, ErrorReporter reporter,
+                          boolean lazy, int segmentLength) {
+    ParallelFrontEnd frontEnd = new ParallelFrontEnd(source, lazy);
+    if (segmentLength > 0) {
+      frontEnd.split(segmentLength);
+    } else {
+      frontEnd.segments.add(new Segment(0, source.length(), 1));
+    }
+
+    List<Segment> segments = frontEnd.segments;
+    if (segments.size() > 1) {
+      ForkJoinPool.commonPool().invoke(
+          new ParseTask(frontEnd, 0, segments.size()));
+    } else {
+      frontEnd.parse(segments.get(0));
+    }
+
+    List<Stmt> statements = new ArrayList<>();
+    for (Segment segment : segments) {
+      statements.addAll(segment.statements);
+      segment.scanErrors.replay(reporter);
+    }
+    for (Segment segment : segments) {
+      segment.parseErrors.replay(reporter);
+    }
+
+    return statements;
+  }
+
+  private void split(int targetLength) {
+    int length = source.length();
+    int segmentStart = 0;
+    int segmentLine = 1;
+    int line = 1;
+    int depth = 0;
+
+    for (int i = 0; i < length; i++) {
+      char c = source.charAt(i);
+      switch (c) {
+        case '\n' -> line++;
+        case '"' -> {
+          i++;
+          while (i < length && source.charAt(i) != '"') {
+            if (source.charAt(i) == '\n') line++;
+            i++;
+          }
+        }
+        case '/' -> {
+          if (i + 1 < length && source.charAt(i + 1) == '/') {
+            while (i + 1 < length && source.charAt(i + 1) != '\n') i++;
+          }
+        }
+        case '(', '{' -> depth++;
+        case ')', '}' -> depth--;
+        default -> {}
+      }
+
+      // An unbalanced closing bracket means the rest of the file is
+      // malformed; leave it in one segment so errors read as usual.
+      if (depth < 0) break;
+
+      if (depth == 0 && (c == ';' || c == '}') &&
+          i + 1 - segmentStart >= targetLength &&
+          startsDeclaration(i + 1)) {
+        segments.add(new Segment(segmentStart, i + 1, segmentLine));
+        segmentStart = i + 1;
+        segmentLine = line;
+      }
+    }
+
+    segments.add(new Segment(segmentStart, length, segmentLine));
+  }
+
+  private void parse(Segment segment) {
+    Scanner scanner = new Scanner(source, segment.start, segment.end,
+                                  segment.line, segment.scanErrors);
+    segment.statements =
+        new Parser(scanner.scanTokens(), segment.parseErrors, lazy).parse();
+  }
+
+  private boolean startsDeclaration(int from) {
+    int length = source.length();
+    int i = from;
+    while (i < length) {
+      char c = source.charAt(i);
+      if (c == ' ' || c == '\r' || c == '\t' || c == '\n') {
+        i++;
+      } else if (c == '/' && i + 1 < length &&
+                 source.charAt(i + 1) == '/') {
+        while (i < length && source.charAt(i) != '\n') i++;
+      } else {
+        break;
+      }
+    }
+
+    int wordStart = i;
+    while (i < length && isIdentifierPart(source.charAt(i))) i++;
+
+    return declarationKeywords.contains(source.substring(wordStart, i));
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+           (c >= '0' && c <= '9') || c == '_';
+  }
+
+  private static class Segment {
+    final int start;
+    final int end;
+    final int line;
+    final BufferedErrors scanErrors = new BufferedErrors();
+    final BufferedErrors parseErrors = new BufferedErrors();
+    List<Stmt> statements;
+
+    Segment(int start, int end, int line) {
+      this.start = start;
+      this.end = end;
+      this.line = line;
+    }
+  }
+
+  private static class ParseTask extends RecursiveAction {
+    private final ParallelFrontEnd frontEnd;
+    private final int from;
+    private final int to;
+
+    ParseTask(ParallelFrontEnd frontEnd, int from, int to) {
+      this.frontEnd = frontEnd;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        frontEnd.parse(frontEnd.segments.get(from));
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(new ParseTask(frontEnd, from, middle),
+                new ParseTask(frontEnd, middle, to));
+    }
+  }
+
+  private static class BufferedErrors implements ErrorReporter {
+    private record Error(int line, String where, String message) {}
+
+    private final List<Error> errors = new ArrayList<>();
+
+    @Override
+    public void report(int line, String where, String message) {
+      errors.add(new Error(line, where, message));
+    }
+
+    void replay(ErrorReporter reporter) {
+      for (Error error : errors) {
+        reporter.report(error.line(), error.where(), error.message());
+      }
+    }
+  }
+}
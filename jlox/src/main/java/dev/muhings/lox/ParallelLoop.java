@@ -0,0 +1,121 @@
+package dev.muhings.lox;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * parallelFor(start, end, fn) calls fn(i) for every whole number i from
+ * start up to but not including end, and parallelMap(array, fn) makes a
+ * new array of fn(element) for every element, in the same order. Both
+ * spread the calls over the cores with the common fork/join pool. The
+ * range is split in halves until the pieces are small enough to give
+ * every worker several, so idle workers can steal the rest of a slow
+ * piece. Each piece runs in an interpreter of
+ * its own, like a spawned task, and shares what fn closes over.
+ *
+ * The order of the calls is not defined, so fn should only read shared
+ * variables and write what belongs to its own index. If calls fail, the
+ * error of the lowest failing index is thrown, the same one whichever
+ * thread got there first; pieces above it that have not started yet are
+ * skipped. Calls should not wait on channels, which would hold a worker
+ * of the shared pool.
+ */
+final class ParallelLoop extends RecursiveAction {
+  // Pieces per worker, so that uneven pieces still balance out.
+  private static final int PIECES_PER_WORKER = 8;
+
+  // One call of the loop body.
+  private interface Iteration {
+    void run(Interpreter interpreter, long i);
+  }
+
+  private static final class Failure {
+    private long index = Long.MAX_VALUE;
+    private Throwable error = null;
+
+    synchronized void record(long index, Throwable error) {
+      if (index < this.index) {
+        this.index = index;
+        this.error = error;
+      }
+    }
+
+    synchronized boolean before(long index) {
+      return this.index < index;
+    }
+  }
+
+  private final Interpreter parent;
+  private final Iteration body;
+  private final long start;
+  private final long end;
+  private final long grain;
+  private final Failure failure;
+
+  private ParallelLoop(Interpreter parent, Iteration body, long start,
+                       long end, long grain, Failure failure) {
+    this.parent = parent;
+    this.body = body;
+    this.start = start;
+    this.end = end;
+    this.grain = grain;
+    this.failure = failure;
+  }
+
+  static void forRange(Interpreter interpreter, long start, long end,
+                       LoxCallable body) {
+    run(interpreter, start, end,
+        (child, i) -> body.call(child, List.of((double)i)));
+  }
+
+  // Every call stores into its own slot of the results, and invoke()
+  // returns only after all of them, so the array is assembled in order
+  // without locking.
+  static LoxArray map(Interpreter interpreter, LoxArray array,
+                      LoxCallable function) {
+    Object[] results = new Object[array.length()];
+    run(interpreter, 0, results.length, (child, i) -> results[(int)i] =
+        function.call(child, List.of(array.get((int)i))));
+    return LoxArray.of(results);
+  }
+
+  private static void run(Interpreter interpreter, long start, long end,
+                          Iteration body) {
+    if (start >= end) return;
+
+    Environment.share();
+    long pieces = (long)ForkJoinPool.getCommonPoolParallelism() *
+                  PIECES_PER_WORKER;
+    long grain = Math.max(1, (end - start) / pieces);
+    Failure failure = new Failure();
+    ForkJoinPool.commonPool().invoke(
+        new ParallelLoop(interpreter, body, start, end, grain, failure));
+
+    if (failure.error instanceof RuntimeException error) throw error;
+    if (failure.error instanceof Error error) throw error;
+  }
+
+  @Override
+  protected void compute() {
+    if (end - start > grain) {
+      long middle = start + (end - start) / 2;
+      invokeAll(
+          new ParallelLoop(parent, body, start, middle, grain, failure),
+          new ParallelLoop(parent, body, middle, end, grain, failure));
+      return;
+    }
+
+    if (failure.before(start)) return;
+
+    Interpreter interpreter = new Interpreter(parent);
+    for (long i = start; i < end; i++) {
+      try {
+        body.run(interpreter, i);
+      } catch (RuntimeException | StackOverflowError error) {
+        failure.record(i, error);
+        return;
+      }
+    }
+  }
+}
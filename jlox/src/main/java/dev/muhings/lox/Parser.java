@@ -22,6 +22,7 @@ import static dev.muhings.lox.TokenType.GREATER_EQUAL;
 import static dev.muhings.lox.TokenType.IDENTIFIER;
 import static dev.muhings.lox.TokenType.IF;
 import static dev.muhings.lox.TokenType.LEFT_BRACE;
+import static dev.muhings.lox.TokenType.LEFT_BRACKET;
 import static dev.muhings.lox.TokenType.LEFT_PAREN;
 import static dev.muhings.lox.TokenType.LESS;
 import static dev.muhings.lox.TokenType.LESS_EQUAL;
@@ -33,6 +34,7 @@ import static dev.muhings.lox.TokenType.PLUS;
 import static dev.muhings.lox.TokenType.PRINT;
 import static dev.muhings.lox.TokenType.RETURN;
 import static dev.muhings.lox.TokenType.RIGHT_BRACE;
+import static dev.muhings.lox.TokenType.RIGHT_BRACKET;
 import static dev.muhings.lox.TokenType.RIGHT_PAREN;
 import static dev.muhings.lox.TokenType.SEMICOLON;
 import static dev.muhings.lox.TokenType.SLASH;
@@ -80,10 +82,48 @@ public class Parser {
 	 private static class ParseError extends RuntimeException {}
 
 	private final List<Token> tokens;
+	private final ErrorReporter reporter;
+	private final boolean lazy;
+	// Whether skipped bodies are checked for syntax errors, which the
+	// parser of a body that was checked already does not repeat.
+	private final boolean checkBodies;
+	// While checking a skipped body the parser walks the same grammar
+	// but builds nothing: statements and lists are null, and expressions
+	// are null or, where an assignment needs to know its target, one of
+	// the shared nodes below.
+	private boolean checking = false;
 	private int current = 0;
 
+	private static final Expr VARIABLE_TARGET = new Expr.Variable(null);
+	private static final Expr GET_TARGET = new Expr.Get(null, null);
+	private static final Expr INDEX_TARGET = new Expr.Index(null, null, null);
+
 	Parser(List<Token> tokens) {
+		this(tokens, Lox::report);
+	}
+
+	Parser(List<Token> tokens, ErrorReporter reporter) {
+		this(tokens, reporter, false);
+	}
+
+	// A lazy parser leaves function bodies as a LazyFunctionBody, which is
+	// parsed for good on the first call. The body's syntax is checked
+	// without building it, so its errors are still reported up front.
+	Parser(List<Token> tokens, ErrorReporter reporter, boolean lazy) {
+		this(tokens, reporter, lazy, lazy);
+	}
+
+	private Parser(List<Token> tokens, ErrorReporter reporter, boolean lazy,
+	               boolean checkBodies) {
 		this.tokens = tokens;
+		this.reporter = reporter;
+		this.lazy = lazy;
+		this.checkBodies = checkBodies;
+	}
+
+	// Parses a body a lazy parser skipped, whose syntax was checked then.
+	static Parser forCheckedBody(List<Token> tokens, ErrorReporter reporter) {
+		return new Parser(tokens, reporter, true, false);
 	}
 
 	List<Stmt> parse() {
@@ -97,7 +137,7 @@ public class Parser {
 
 	private Stmt declaration() {
     try {
-      if (match(VAR)) return varDeclaration();
+      if (match(VAR)) return at(previous().line, varDeclaration());
 
       return statement();
     } catch (ParseError error) {
@@ -115,20 +155,34 @@ public class Parser {
     }
 
     consume(SEMICOLON, "Expect ';' after variable declaration.");
+    if (checking) return null;
     return new Stmt.Var(name, initializer);
   }
 
 	private Stmt statement() {
-    if (match(PRINT)) return printStatement();
-		if (match(LEFT_BRACE)) return new Stmt.Block(block());
-		if (match(IF)) return ifStatement();
-		if (match(WHILE)) return whileStatement();
-		if (match(FOR)) return forStatement();
-		if (match(CLASS)) return classDeclaration();
-		if (match(FUN)) return function("function");
-		if (match(RETURN)) return returnStatement();
+    int line = peek().line;
+    if (match(PRINT)) return at(line, printStatement());
+		if (match(LEFT_BRACE)) return at(line, blockStatement());
+		if (match(IF)) return at(line, ifStatement());
+		if (match(WHILE)) return at(line, whileStatement());
+		if (match(FOR)) return at(line, forStatement());
+		if (match(CLASS)) return at(line, classDeclaration());
+		if (match(FUN)) return at(line, function("function"));
+		if (match(RETURN)) return at(line, returnStatement());
+
+    return at(line, expressionStatement());
+  }
+
+	// Records the line a statement starts on, for the hotspot report,
+	// unless a more precise line was already set.
+	private static <T extends Stmt> T at(int line, T stmt) {
+    if (stmt != null && stmt.line == 0) stmt.line = line;
+    return stmt;
+  }
 
-    return expressionStatement();
+	private Stmt blockStatement() {
+    List<Stmt> statements = block();
+    return checking ? null : new Stmt.Block(statements);
   }
 
 	private Stmt classDeclaration() {
@@ -137,18 +191,19 @@ public class Parser {
 		Expr.Variable superclass = null;
     if (match(LESS)) {
       consume(IDENTIFIER, "Expect superclass name.");
-      superclass = new Expr.Variable(previous());
+      if (!checking) superclass = new Expr.Variable(previous());
     }
 
     consume(LEFT_BRACE, "Expect '{' before class body.");
 
-    List<Stmt.Function> methods = new ArrayList<>();
+    List<Stmt.Function> methods = list();
     while (!check(RIGHT_BRACE) && !isAtEnd()) {
-      methods.add(function("method"));
+      add(methods, function("method"));
     }
 
     consume(RIGHT_BRACE, "Expect '}' after class body.");
 
+    if (checking) return null;
     return new Stmt.Class(name, superclass, methods);
   }
 
@@ -160,6 +215,7 @@ public class Parser {
     }
 
     consume(SEMICOLON, "Expect ';' after return value.");
+    if (checking) return null;
     return new Stmt.Return(keyword, value);
   }
 
@@ -167,34 +223,92 @@ public class Parser {
     Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
 
 		consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
-    List<Token> parameters = new ArrayList<>();
+    List<Token> parameters = list();
+    int arity = 0;
     if (!check(RIGHT_PAREN)) {
       do {
-        if (parameters.size() >= 255) {
+        if (arity++ >= 255) {
           error(peek(), "Can't have more than 255 parameters.");
         }
 
-        parameters.add(
+        add(parameters,
             consume(IDENTIFIER, "Expect parameter name."));
       } while (match(COMMA));
     }
     consume(RIGHT_PAREN, "Expect ')' after parameters.");
 
 		consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
-    List<Stmt> body = block();
-    return new Stmt.Function(name, parameters, body);
+    List<Stmt> body;
+    if (!lazy || checking) {
+      body = block();
+    } else {
+      body = checkBodies ? checkBody() : skipBody();
+    }
+    if (checking) return null;
+    return at(name.line, new Stmt.Function(name, parameters, body));
+  }
+
+	// Checks a body in the same pass as the rest of the script, nested
+	// bodies included, and keeps only its tokens.
+	private List<Stmt> checkBody() {
+    int start = current;
+    checking = true;
+    try {
+      block();
+    } finally {
+      checking = false;
+    }
+
+    return lazyBody(start, previous());
+  }
+
+	private List<Stmt> skipBody() {
+    int start = current;
+    List<TokenType> closers = new ArrayList<>();
+
+    while (!isAtEnd()) {
+      Token token = advance();
+      switch (token.type) {
+        case LEFT_BRACE -> closers.add(RIGHT_BRACE);
+        case LEFT_PAREN -> closers.add(RIGHT_PAREN);
+        case LEFT_BRACKET -> closers.add(RIGHT_BRACKET);
+        case RIGHT_BRACE, RIGHT_PAREN, RIGHT_BRACKET -> {
+          if (closers.isEmpty() && token.type == RIGHT_BRACE) {
+            return lazyBody(start, token);
+          }
+
+          if (closers.isEmpty() ||
+              closers.remove(closers.size() - 1) != token.type) {
+            throw error(token, "Unmatched '" + token.lexeme + "'.");
+          }
+        }
+        default -> {}
+      }
+    }
+
+    throw error(peek(), "Expect '}' after block.");
+  }
+
+	// Copies the body's tokens, so the body does not keep the whole
+	// script's tokens alive, and ends them where the closing brace was.
+	private LazyFunctionBody lazyBody(int start, Token closingBrace) {
+    List<Token> body = new ArrayList<>(current - start);
+    body.addAll(tokens.subList(start, current - 1));
+    body.add(new Token(EOF, "", null, closingBrace.line));
+    return new LazyFunctionBody(body);
   }
 
 	private Stmt forStatement() {
+    int line = previous().line;
     consume(LEFT_PAREN, "Expect '(' after 'for'.");
 
 		Stmt initializer;
     if (match(SEMICOLON)) {
       initializer = null;
     } else if (match(VAR)) {
-      initializer = varDeclaration();
+      initializer = at(line, varDeclaration());
     } else {
-      initializer = expressionStatement();
+      initializer = at(line, expressionStatement());
     }
 
 		Expr condition = null;
@@ -204,27 +318,29 @@ public class Parser {
     consume(SEMICOLON, "Expect ';' after loop condition.");
 
 		Expr increment = null;
+    int incrementLine = peek().line;
     if (!check(RIGHT_PAREN)) {
       increment = expression();
     }
     consume(RIGHT_PAREN, "Expect ')' after for clauses.");
 
 		Stmt body = statement();
+    if (checking) return null;
 
 		if (increment != null) {
-      body = new Stmt.Block(
+      body = at(line, new Stmt.Block(
         Arrays.asList(
 							body,
-							new Stmt.Expression(increment)
+							at(incrementLine, new Stmt.Expression(increment))
 						)
-				);
+				));
     }
 
 		if (condition == null) condition = new Expr.Literal(true);
-    body = new Stmt.While(condition, body);
+    body = at(line, new Stmt.While(condition, body));
 
 		 if (initializer != null) {
-      body = new Stmt.Block(Arrays.asList(initializer, body));
+      body = at(line, new Stmt.Block(Arrays.asList(initializer, body)));
     }
 
     return body;
@@ -236,14 +352,15 @@ public class Parser {
     consume(RIGHT_PAREN, "Expect ')' after condition.");
     Stmt body = statement();
 
+    if (checking) return null;
     return new Stmt.While(condition, body);
   }
 
 	private List<Stmt> block() {
-    List<Stmt> statements = new ArrayList<>();
+    List<Stmt> statements = list();
 
     while (!check(RIGHT_BRACE) && !isAtEnd()) {
-      statements.add(declaration());
+      add(statements, declaration());
     }
 
     consume(RIGHT_BRACE, "Expect '}' after block.");
@@ -261,18 +378,21 @@ public class Parser {
       elseBranch = statement();
     }
 
+    if (checking) return null;
     return new Stmt.If(condition, thenBranch, elseBranch);
   }
 
 	private Stmt printStatement() {
     Expr value = expression();
     consume(SEMICOLON, "Expect ';' after value.");
+    if (checking) return null;
     return new Stmt.Print(value);
   }
 
 	private Stmt expressionStatement() {
     Expr expr = expression();
     consume(SEMICOLON, "Expect ';' after expression.");
+    if (checking) return null;
     return new Stmt.Expression(expr);
   }
 
@@ -287,11 +407,19 @@ public class Parser {
       Token equals = previous();
       Expr value = assignment();
 
-      if (expr instanceof Expr.Variable variable) {
+      if (checking) {
+        if (expr == VARIABLE_TARGET || expr == GET_TARGET ||
+            expr == INDEX_TARGET) {
+          return null;
+        }
+      } else if (expr instanceof Expr.Variable variable) {
         Token name = variable.name;
         return new Expr.Assign(name, value);
 			} else if (expr instanceof Expr.Get get) {
         return new Expr.Set(get.object, get.name, value);
+      } else if (expr instanceof Expr.Index index) {
+        return new Expr.SetIndex(index.object, index.bracket, index.index,
+                                 value);
       }
 
       error(equals, "Invalid assignment target."); 
@@ -306,7 +434,7 @@ public class Parser {
     while (match(OR)) {
       Token operator = previous();
       Expr right = and();
-      expr = new Expr.Logical(expr, operator, right);
+      expr = checking ? null : new Expr.Logical(expr, operator, right);
     }
 
     return expr;
@@ -318,7 +446,7 @@ public class Parser {
     while (match(AND)) {
       Token operator = previous();
       Expr right = equality();
-      expr = new Expr.Logical(expr, operator, right);
+      expr = checking ? null : new Expr.Logical(expr, operator, right);
     }
 
     return expr;
@@ -330,7 +458,7 @@ public class Parser {
 		while (match(BANG_EQUAL, EQUAL_EQUAL)) {
       Token operator = previous();
       Expr right = comparison();
-      expr = new Expr.Binary(expr, operator, right);
+      expr = checking ? null : new Expr.Binary(expr, operator, right);
     }
 
     return expr;
@@ -339,10 +467,10 @@ public class Parser {
 	private Expr comparison() {
     Expr expr = term();
 
-    while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
+    while (match(GREATER, GREATER_EQUAL) || match(LESS, LESS_EQUAL)) {
       Token operator = previous();
       Expr right = term();
-      expr = new Expr.Binary(expr, operator, right);
+      expr = checking ? null : new Expr.Binary(expr, operator, right);
     }
 
     return expr;
@@ -354,7 +482,7 @@ public class Parser {
     while (match(MINUS, PLUS)) {
       Token operator = previous();
       Expr right = factor();
-      expr = new Expr.Binary(expr, operator, right);
+      expr = checking ? null : new Expr.Binary(expr, operator, right);
     }
 
     return expr;
@@ -366,7 +494,7 @@ public class Parser {
     while (match(SLASH, STAR)) {
       Token operator = previous();
       Expr right = unary();
-      expr = new Expr.Binary(expr, operator, right);
+      expr = checking ? null : new Expr.Binary(expr, operator, right);
     }
 
     return expr;
@@ -376,7 +504,7 @@ public class Parser {
     if (match(BANG, MINUS)) {
       Token operator = previous();
       Expr right = unary();
-      return new Expr.Unary(operator, right);
+      return checking ? null : new Expr.Unary(operator, right);
     }
 
     return call();
@@ -391,7 +519,11 @@ public class Parser {
 			} else if (match(DOT)) {
         Token name = consume(IDENTIFIER,
             "Expect property name after '.'.");
-        expr = new Expr.Get(expr, name);
+        expr = checking ? GET_TARGET : new Expr.Get(expr, name);
+      } else if (match(LEFT_BRACKET)) {
+        Expr index = expression();
+        Token bracket = consume(RIGHT_BRACKET, "Expect ']' after index.");
+        expr = checking ? INDEX_TARGET : new Expr.Index(expr, bracket, index);
       } else {
         break;
       }
@@ -401,23 +533,27 @@ public class Parser {
   }
 
 	private Expr finishCall(Expr callee) {
-    List<Expr> arguments = new ArrayList<>();
+    List<Expr> arguments = list();
+    int count = 0;
     if (!check(RIGHT_PAREN)) {
       do {
-				if (arguments.size() >= 255) {
+				if (count++ >= 255) {
           error(peek(), "Can't have more than 255 arguments.");
         }
-        arguments.add(expression());
+        add(arguments, expression());
       } while (match(COMMA));
     }
 
     Token paren = consume(RIGHT_PAREN,
                           "Expect ')' after arguments.");
 
+    if (checking) return null;
     return new Expr.Call(callee, paren, arguments);
   }
 
 	private Expr primary() {
+    if (checking) return checkPrimary();
+
     if (match(FALSE)) return new Expr.Literal(false);
     if (match(TRUE)) return new Expr.Literal(true);
     if (match(NIL)) return new Expr.Literal(null);
@@ -446,26 +582,85 @@ public class Parser {
       return new Expr.Grouping(expr);
     }
 
+    if (match(LEFT_BRACKET)) {
+      List<Expr> elements = new ArrayList<>();
+      if (!check(RIGHT_BRACKET)) {
+        do {
+          elements.add(expression());
+        } while (match(COMMA));
+      }
+
+      Token bracket = consume(RIGHT_BRACKET,
+                              "Expect ']' after array elements.");
+      return new Expr.Array(bracket, elements);
+    }
+
 		throw error(peek(), "Expect expression.");
   }
 
+	// primary() without the nodes.
+	private Expr checkPrimary() {
+    if (match(FALSE, TRUE) || match(NIL, THIS) || match(NUMBER, STRING)) {
+      return null;
+    }
+
+		if (match(SUPER)) {
+      consume(DOT, "Expect '.' after 'super'.");
+      consume(IDENTIFIER, "Expect superclass method name.");
+      return null;
+    }
+
+		if (match(IDENTIFIER)) return VARIABLE_TARGET;
+
+    if (match(LEFT_PAREN)) {
+      expression();
+      consume(RIGHT_PAREN, "Expect ')' after expression.");
+      return null;
+    }
+
+    if (match(LEFT_BRACKET)) {
+      if (!check(RIGHT_BRACKET)) {
+        do {
+          expression();
+        } while (match(COMMA));
+      }
+
+      consume(RIGHT_BRACKET, "Expect ']' after array elements.");
+      return null;
+    }
+
+		throw error(peek(), "Expect expression.");
+  }
+
+	private <T> List<T> list() {
+    return checking ? null : new ArrayList<>();
+  }
+
+	private static <T> void add(List<T> list, T element) {
+    if (list != null) list.add(element);
+  }
+
 	private Token consume(TokenType type, String message) {
     if (check(type)) return advance();
 
     throw error(peek(), message);
   }
 
-	private boolean match(TokenType... types) {
-		for (TokenType type : types) {
-			 if (check(type)) {
-        advance();
-        return true;
-      }
-		}
+	// One and two types rather than varargs, which would allocate an
+	// array on every call.
+	private boolean match(TokenType type) {
+		if (check(type)) {
+      advance();
+      return true;
+    }
 
 		return false;
 	}
 
+	private boolean match(TokenType first, TokenType second) {
+		return match(first) || match(second);
+	}
+
 	private boolean check(TokenType type) {
     if (isAtEnd()) return false;
     return peek().type == type;
@@ -489,7 +684,7 @@ public class Parser {
   }
 
 	private ParseError error(Token token, String message) {
-    Lox.error(token, message);
+    reporter.error(token, message);
     return new ParseError();
   }
 
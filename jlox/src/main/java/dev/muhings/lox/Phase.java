@@ -0,0 +1,8 @@
+package dev.muhings.lox;
+
+// The steps Lox.run takes a script through.
+enum Phase {
+  SCAN, PARSE, RESOLVE, EXECUTE;
+
+  final String label = name().toLowerCase();
+}
@@ -0,0 +1,282 @@
+package dev.muhings.lox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * The --timings report: wall time, CPU time and bytes allocated by each
+ * phase of the pipeline, with the number of tokens and AST nodes and the
+ * front-end throughput. CPU time and allocation come from the JVM's
+ * per-thread counters, so they leave out the worker threads of the
+ * parallel front end, and the token count is unknown there.
+ */
+class PhaseTimings {
+  private static final ThreadMXBean threads =
+      (ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+  record Start(long cpuNanos, long allocatedBytes) {}
+
+  private final boolean json;
+  private final long[] wallNanos = new long[Phase.values().length];
+  private final long[] cpuNanos = new long[Phase.values().length];
+  private final long[] allocatedBytes = new long[Phase.values().length];
+  private long sourceBytes = 0;
+  private long tokens = -1;
+  private long nodes = -1;
+
+  PhaseTimings(boolean json) {
+    this.json = json;
+  }
+
+  Start begin() {
+    return new Start(threads.getCurrentThreadCpuTime(),
+                     threads.getCurrentThreadAllocatedBytes());
+  }
+
+  void end(Phase phase, Start start, long wall) {
+    int i = phase.ordinal();
+    wallNanos[i] += wall;
+    cpuNanos[i] += threads.getCurrentThreadCpuTime() - start.cpuNanos();
+    allocatedBytes[i] +=
+        threads.getCurrentThreadAllocatedBytes() - start.allocatedBytes();
+  }
+
+  void source(long bytes) {
+    sourceBytes += bytes;
+  }
+
+  void tokens(List<Token> scanned) {
+    tokens = Math.max(tokens, 0) + scanned.size();
+  }
+
+  void nodes(List<Stmt> statements) {
+    nodes = Math.max(nodes, 0) + new NodeCounter().count(statements);
+  }
+
+  void print(PrintStream out) {
+    if (json) {
+      printJson(out);
+    } else {
+      printText(out);
+    }
+  }
+
+  private void printText(PrintStream out) {
+    out.println("Lox timings:");
+    out.printf("%-8s %10s %10s %12s %8s%n",
+               "phase", "wall ms", "cpu ms", "allocated", "MB/s");
+    long wall = 0, cpu = 0, allocated = 0;
+    for (Phase phase : Phase.values()) {
+      int i = phase.ordinal();
+      out.printf(Locale.ROOT, "%-8s %10.3f %10.3f %12s %8s%n", phase.label,
+                 wallNanos[i] / 1e6, cpuNanos[i] / 1e6,
+                 bytes(allocatedBytes[i]), throughput(phase));
+      wall += wallNanos[i];
+      cpu += cpuNanos[i];
+      allocated += allocatedBytes[i];
+    }
+
+    out.printf(Locale.ROOT, "%-8s %10.3f %10.3f %12s%n", "total",
+               wall / 1e6, cpu / 1e6, bytes(allocated));
+    out.printf("%d bytes of source, %s tokens, %s AST nodes%n", sourceBytes,
+               tokens < 0 ? "?" : Long.toString(tokens),
+               nodes < 0 ? "?" : Long.toString(nodes));
+  }
+
+  private void printJson(PrintStream out) {
+    StringBuilder builder = new StringBuilder("{\"phases\":{");
+    for (Phase phase : Phase.values()) {
+      int i = phase.ordinal();
+      if (i > 0) builder.append(',');
+      builder.append('"').append(phase.label).append("\":{")
+             .append("\"wallNanos\":").append(wallNanos[i])
+             .append(",\"cpuNanos\":").append(cpuNanos[i])
+             .append(",\"allocatedBytes\":").append(allocatedBytes[i]);
+      double megabytes = megabytesPerSecond(phase);
+      if (megabytes >= 0) {
+        builder.append(String.format(Locale.ROOT, ",\"mbPerSecond\":%.3f",
+                                     megabytes));
+      }
+      builder.append('}');
+    }
+
+    builder.append("},\"sourceBytes\":").append(sourceBytes)
+           .append(",\"tokens\":").append(tokens < 0 ? "null" : tokens)
+           .append(",\"nodes\":").append(nodes < 0 ? "null" : nodes)
+           .append('}');
+    out.println(builder);
+  }
+
+  private String throughput(Phase phase) {
+    double megabytes = megabytesPerSecond(phase);
+    return megabytes < 0 ? "" : String.format(Locale.ROOT, "%.1f", megabytes);
+  }
+
+  // Only the scanner and parser work through the source text; the
+  // resolver and the interpreter walk the AST.
+  private double megabytesPerSecond(Phase phase) {
+    long wall = wallNanos[phase.ordinal()];
+    if ((phase != Phase.SCAN && phase != Phase.PARSE) || wall == 0) return -1;
+    return sourceBytes / 1e6 / (wall / 1e9);
+  }
+
+  private static String bytes(long bytes) {
+    if (bytes < 1024) return bytes + " B";
+    if (bytes < 1024 * 1024) {
+      return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+    }
+    return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+  }
+
+  private static class NodeCounter
+      implements Stmt.Visitor<Integer>, Expr.Visitor<Integer> {
+    int count(List<Stmt> statements) {
+      if (statements instanceof LazyFunctionBody body && !body.isParsed()) {
+        return 0;
+      }
+
+      int nodes = 0;
+      for (Stmt statement : statements) nodes += count(statement);
+      return nodes;
+    }
+
+    private int count(Stmt stmt) {
+      return stmt == null ? 0 : stmt.accept(this);
+    }
+
+    private int count(Expr expr) {
+      return expr == null ? 0 : expr.accept(this);
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+      return 1 + count(stmt.statements);
+    }
+
+    @Override
+    public Integer visitClassStmt(Stmt.Class stmt) {
+      int nodes = 1 + count(stmt.superclass);
+      for (Stmt.Function method : stmt.methods) nodes += count(method);
+      return nodes;
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+      return 1 + count(stmt.expression);
+    }
+
+    @Override
+    public Integer visitFunctionStmt(Stmt.Function stmt) {
+      return 1 + count(stmt.body);
+    }
+
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+      return 1 + count(stmt.condition) + count(stmt.thenBranch) +
+          count(stmt.elseBranch);
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+      return 1 + count(stmt.expression);
+    }
+
+    @Override
+    public Integer visitReturnStmt(Stmt.Return stmt) {
+      return 1 + count(stmt.value);
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+      return 1 + count(stmt.initializer);
+    }
+
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+      return 1 + count(stmt.condition) + count(stmt.body);
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+      return 1 + count(expr.value);
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+      return 1 + count(expr.left) + count(expr.right);
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+      int nodes = 1 + count(expr.callee);
+      for (Expr argument : expr.arguments) nodes += count(argument);
+      return nodes;
+    }
+
+    @Override
+    public Integer visitIndexExpr(Expr.Index expr) {
+      return 1 + count(expr.object) + count(expr.index);
+    }
+
+    @Override
+    public Integer visitSetIndexExpr(Expr.SetIndex expr) {
+      return 1 + count(expr.object) + count(expr.index) + count(expr.value);
+    }
+
+    @Override
+    public Integer visitArrayExpr(Expr.Array expr) {
+      int nodes = 1;
+      for (Expr element : expr.elements) nodes += count(element);
+      return nodes;
+    }
+
+    @Override
+    public Integer visitGetExpr(Expr.Get expr) {
+      return 1 + count(expr.object);
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+      return 1 + count(expr.expression);
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+      return 1;
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+      return 1 + count(expr.left) + count(expr.right);
+    }
+
+    @Override
+    public Integer visitSetExpr(Expr.Set expr) {
+      return 1 + count(expr.object) + count(expr.value);
+    }
+
+    @Override
+    public Integer visitSuperExpr(Expr.Super expr) {
+      return 1;
+    }
+
+    @Override
+    public Integer visitThisExpr(Expr.This expr) {
+      return 1;
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+      return 1 + count(expr.right);
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+      return 1;
+    }
+  }
+}
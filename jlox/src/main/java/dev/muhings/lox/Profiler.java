@@ -0,0 +1,165 @@
+package dev.muhings.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sampling profiler for Lox code. LoxFunction.call pushes its
+ * declaration on a shadow call stack, and a background thread copies
+ * that stack at a fixed rate. Pushing and popping only store a reference
+ * and bump a volatile depth, so the interpreter pays almost nothing; the
+ * sampler may now and then see a frame that was just replaced, which is
+ * fine for a statistical profile.
+ *
+ * Results are written as collapsed stacks ("a;b;c count" per line), the
+ * input format of flamegraph.pl, speedscope and similar tools, and a
+ * summary of the hottest functions is printed to stderr.
+ */
+class Profiler {
+  private static final String ROOT = "<script>";
+
+  private final long intervalNanos;
+  private final ScheduledExecutorService sampler =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lox-profiler");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private Stmt.Function[] frames = new Stmt.Function[64];
+  private volatile int depth = 0;
+
+  // Only touched by the sampler thread until stop() has joined it.
+  private final Map<Stmt.Function, String> names = new IdentityHashMap<>();
+  private final Map<Stmt.Function, String> classNames =
+      new IdentityHashMap<>();
+  private final Map<String, Long> stacks = new HashMap<>();
+  private long samples = 0;
+
+  Profiler(int hertz) {
+    this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / hertz;
+  }
+
+  void start() {
+    sampler.scheduleAtFixedRate(this::sample, intervalNanos, intervalNanos,
+                                TimeUnit.NANOSECONDS);
+  }
+
+  void enter(Stmt.Function function) {
+    int top = depth;
+    if (top == frames.length) frames = Arrays.copyOf(frames, top * 2);
+    frames[top] = function;
+    depth = top + 1;
+  }
+
+  void exit() {
+    depth = depth - 1;
+  }
+
+  // Lets method frames read as "Class.method" instead of a bare name.
+  void declareClass(Stmt.Class stmt) {
+    Map<Stmt.Function, String> methods = new IdentityHashMap<>();
+    for (Stmt.Function method : stmt.methods) {
+      methods.put(method, stmt.name.lexeme);
+    }
+
+    sampler.execute(() -> classNames.putAll(methods));
+  }
+
+  private void sample() {
+    int top = depth;
+    Stmt.Function[] stack = frames;
+    top = Math.min(top, stack.length);
+
+    StringBuilder collapsed = new StringBuilder(ROOT);
+    for (int i = 0; i < top; i++) {
+      Stmt.Function function = stack[i];
+      if (function == null) continue;
+      collapsed.append(';').append(name(function));
+    }
+
+    stacks.merge(collapsed.toString(), 1L, Long::sum);
+    samples++;
+  }
+
+  private String name(Stmt.Function function) {
+    String name = names.get(function);
+    if (name == null) {
+      String className = classNames.get(function);
+      name = (className == null ? "" : className + ".") +
+          function.name.lexeme + ":" + function.name.line;
+      names.put(function, name);
+    }
+
+    return name;
+  }
+
+  void stop(Path output, int top, PrintStream summary) {
+    sampler.shutdown();
+    try {
+      sampler.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    try (PrintWriter writer = new PrintWriter(
+        Files.newBufferedWriter(output))) {
+      for (Map.Entry<String, Long> stack : new TreeMap<>(stacks).entrySet()) {
+        writer.println(stack.getKey() + " " + stack.getValue());
+      }
+    } catch (IOException e) {
+      summary.println("Could not write profile to " + output + ": " +
+                      e.getMessage());
+    }
+
+    printSummary(output, top, summary);
+  }
+
+  private void printSummary(Path output, int top, PrintStream summary) {
+    Map<String, Long> self = new HashMap<>();
+    Map<String, Long> total = new HashMap<>();
+    for (Map.Entry<String, Long> stack : stacks.entrySet()) {
+      String[] frames = stack.getKey().split(";");
+      long count = stack.getValue();
+      self.merge(frames[frames.length - 1], count, Long::sum);
+
+      // Recursive functions appear several times but count once.
+      Set<String> seen = new HashSet<>(Arrays.asList(frames));
+      for (String frame : seen) total.merge(frame, count, Long::sum);
+    }
+
+    List<String> functions = new ArrayList<>(total.keySet());
+    functions.sort((a, b) -> Long.compare(self.getOrDefault(b, 0L),
+                                          self.getOrDefault(a, 0L)));
+
+    summary.println();
+    summary.printf("Lox profile: %d samples every %.3f ms, written to %s%n",
+                   samples, intervalNanos / 1e6, output);
+    summary.printf("%8s %8s  %s%n", "self", "total", "function");
+    for (String function : functions.subList(0,
+        Math.min(top, functions.size()))) {
+      summary.printf("%7.1f%% %7.1f%%  %s%n",
+                     percent(self.getOrDefault(function, 0L)),
+                     percent(total.get(function)), function);
+    }
+  }
+
+  private double percent(long count) {
+    return samples == 0 ? 0 : 100.0 * count / samples;
+  }
+}
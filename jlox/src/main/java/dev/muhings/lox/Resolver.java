@@ -1,5 +1,6 @@
 package dev.muhings.lox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,13 +43,24 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		SUBCLASS
   }
 
+	// What a skipped LazyFunctionBody needs to be resolved later exactly as
+	// if it had been resolved in place.
+	record Context(List<Map<String, Boolean>> scopes,
+	               FunctionType function, ClassType klass) {}
+
   private final Interpreter interpreter;
+  private final ErrorReporter reporter;
 	private final Stack<Map<String, Boolean>> scopes = new Stack<>();
 	private FunctionType currentFunction = FunctionType.NONE;
   private ClassType currentClass = ClassType.NONE;
 
   Resolver(Interpreter interpreter) {
+    this(interpreter, Lox::report);
+  }
+
+  Resolver(Interpreter interpreter, ErrorReporter reporter) {
     this.interpreter = interpreter;
+    this.reporter = reporter;
   }
 
 	@Override
@@ -92,7 +104,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 		if (stmt.superclass != null &&
         stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
-      Lox.error(stmt.superclass.name,
+      reporter.error(stmt.superclass.name,
           "A class can't inherit from itself.");
     }
 
@@ -137,12 +149,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitReturnStmt(Return stmt) {
 		if (currentFunction == FunctionType.NONE) {
-      Lox.error(stmt.keyword, "Can't return from top-level code.");
+      reporter.error(stmt.keyword, "Can't return from top-level code.");
     }
 
 		if (stmt.value != null) {
 			if (currentFunction == FunctionType.INITIALIZER) {
-        Lox.error(stmt.keyword,
+        reporter.error(stmt.keyword,
             "Can't return a value from an initializer.");
       }
 
@@ -191,10 +203,10 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitSuperExpr(Super expr) {
 		if (currentClass == ClassType.NONE) {
-      Lox.error(expr.keyword,
+      reporter.error(expr.keyword,
           "Can't use 'super' outside of a class.");
     } else if (currentClass != ClassType.SUBCLASS) {
-      Lox.error(expr.keyword,
+      reporter.error(expr.keyword,
           "Can't use 'super' in a class with no superclass.");
     }
 
@@ -206,7 +218,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitThisExpr(This expr) {
 		if (currentClass == ClassType.NONE) {
-      Lox.error(expr.keyword,
+      reporter.error(expr.keyword,
           "Can't use 'this' outside of a class.");
       return null;
     }
@@ -260,7 +272,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 						Boolean.FALSE
 					)
 				) {
-      Lox.error(expr.name,
+      reporter.error(expr.name,
           "Can't read local variable in its own initializer.");
     }
 
@@ -272,6 +284,30 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	public Void visitAssignExpr(Assign expr) {
 		resolve(expr.value);
     resolveLocal(expr, expr.name);
+    return null;
+	}
+
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		resolve(expr.object);
+    resolve(expr.index);
+    return null;
+	}
+
+	@Override
+	public Void visitSetIndexExpr(Expr.SetIndex expr) {
+		resolve(expr.value);
+    resolve(expr.object);
+    resolve(expr.index);
+    return null;
+	}
+
+	@Override
+	public Void visitArrayExpr(Expr.Array expr) {
+		for (Expr element : expr.elements) {
+      resolve(element);
+    }
+
     return null;
 	}
 
@@ -318,7 +354,33 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
   }
 
+	void resolveDeferred(Stmt.Function function, List<Stmt> body,
+	                     Context context) {
+    for (Map<String, Boolean> scope : context.scopes()) {
+      scopes.push(new HashMap<>(scope));
+    }
+    currentClass = context.klass();
+    currentFunction = context.function();
+
+    beginScope();
+    for (Token param : function.params) {
+      declare(param);
+      define(param);
+    }
+    resolve(body);
+    endScope();
+  }
+
 	private void resolveFunction(Stmt.Function function, FunctionType type) {
+    if (function.body instanceof LazyFunctionBody lazy && !lazy.isParsed()) {
+      List<Map<String, Boolean>> enclosing = new ArrayList<>();
+      for (Map<String, Boolean> scope : scopes) {
+        enclosing.add(new HashMap<>(scope));
+      }
+      lazy.defer(new Context(enclosing, type, currentClass));
+      return;
+    }
+
 		FunctionType enclosingFunction = currentFunction;
     currentFunction = type;
 
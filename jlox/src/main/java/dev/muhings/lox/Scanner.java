@@ -23,6 +23,7 @@ import static dev.muhings.lox.TokenType.GREATER_EQUAL;
 import static dev.muhings.lox.TokenType.IDENTIFIER;
 import static dev.muhings.lox.TokenType.IF;
 import static dev.muhings.lox.TokenType.LEFT_BRACE;
+import static dev.muhings.lox.TokenType.LEFT_BRACKET;
 import static dev.muhings.lox.TokenType.LEFT_PAREN;
 import static dev.muhings.lox.TokenType.LESS;
 import static dev.muhings.lox.TokenType.LESS_EQUAL;
@@ -34,6 +35,7 @@ import static dev.muhings.lox.TokenType.PLUS;
 import static dev.muhings.lox.TokenType.PRINT;
 import static dev.muhings.lox.TokenType.RETURN;
 import static dev.muhings.lox.TokenType.RIGHT_BRACE;
+import static dev.muhings.lox.TokenType.RIGHT_BRACKET;
 import static dev.muhings.lox.TokenType.RIGHT_PAREN;
 import static dev.muhings.lox.TokenType.SEMICOLON;
 import static dev.muhings.lox.TokenType.SLASH;
@@ -48,6 +50,8 @@ import static dev.muhings.lox.TokenType.WHILE;
 
 class Scanner {
   private final String source;
+  private final int end;
+  private final ErrorReporter reporter;
   private final List<Token> tokens = new ArrayList<>();
 	private int start = 0;
   private int current = 0;
@@ -76,7 +80,20 @@ class Scanner {
   }
 
   Scanner(String source) {
+    this(source, 0, source.length(), 1, Lox::report);
+  }
+
+  // Scans only source[offset, end), numbering lines from the given one,
+  // so a segment of a larger file gets the same tokens it would have had
+  // if the whole file were scanned in one go.
+  Scanner(String source, int offset, int end, int line,
+          ErrorReporter reporter) {
     this.source = source;
+    this.end = end;
+    this.start = offset;
+    this.current = offset;
+    this.line = line;
+    this.reporter = reporter;
   }
 
 	List<Token> scanTokens() {
@@ -90,7 +107,7 @@ class Scanner {
   }
 
 	private boolean isAtEnd() {
-    return current >= source.length();
+    return current >= end;
   }
 
 	private void scanToken() {
@@ -100,6 +117,8 @@ class Scanner {
 			case ')' -> addToken(RIGHT_PAREN);
 			case '{' -> addToken(LEFT_BRACE);
 			case '}' -> addToken(RIGHT_BRACE);
+			case '[' -> addToken(LEFT_BRACKET);
+			case ']' -> addToken(RIGHT_BRACKET);
 			case ',' -> addToken(COMMA);
 			case '.' -> addToken(DOT);
 			case '-' -> addToken(MINUS);
@@ -132,7 +151,7 @@ class Scanner {
 				} else if (isAlpha(c)) {
 					identifier();
 				} else {
-					Lox.error(line, "Unexpected character.");
+					reporter.error(line, "Unexpected character.");
 				}
 			}
 		}
@@ -188,7 +207,7 @@ class Scanner {
     }
 
     if (isAtEnd()) {
-      Lox.error(line, "Unterminated string.");
+      reporter.error(line, "Unterminated string.");
       return;
     }
 
@@ -199,7 +218,7 @@ class Scanner {
   }
 
 	private char peekNext() {
-    if (current + 1 >= source.length()) return '\0';
+    if (current + 1 >= end) return '\0';
     return source.charAt(current + 1);
   } 
 
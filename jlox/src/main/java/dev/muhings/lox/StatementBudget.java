@@ -0,0 +1,29 @@
+package dev.muhings.lox;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statements an isolate may execute, counted across its interpreter
+ * and the child interpreters of its parallelFor and parallelMap pieces,
+ * so splitting the work does not hand out fresh budgets. Interpreters
+ * outside isolates have none and count nothing.
+ */
+final class StatementBudget {
+  private final long limit;
+  private final AtomicLong executed = new AtomicLong();
+
+  StatementBudget(long limit) {
+    this.limit = limit;
+  }
+
+  void spend(Stmt stmt) {
+    if (executed.incrementAndGet() > limit) {
+      throw new RuntimeError(new Token(TokenType.EOF, "", null, stmt.line),
+          "Exceeded the limit of " + limit + " statements.");
+    }
+  }
+
+  long executed() {
+    return executed.get();
+  }
+}
@@ -28,6 +28,10 @@ abstract class Stmt {
 
   abstract <R> R accept(Visitor<R> visitor);
 
+  int line;
+  long executions;
+  long selfNanos;
+
   static class Expression extends Stmt {
     Expression(Expr expression) {
       this.expression = expression;
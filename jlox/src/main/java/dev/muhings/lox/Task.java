@@ -0,0 +1,82 @@
+package dev.muhings.lox;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A function running on its own thread, started by spawn(fn). The
+ * function runs in an interpreter of its own that shares the globals and
+ * output of the one that spawned it, and sees its closure like any other
+ * call would; see {@link Environment} for what is safe to share.
+ *
+ * Tasks run on virtual threads when the JVM has them, so a script can
+ * keep thousands of tasks waiting on channels, and on a growing pool of
+ * platform threads otherwise. The threads are daemons: a script that
+ * ends without joining its tasks does not wait for them. An error in a
+ * task is thrown again by join(), with the line where it happened.
+ */
+final class Task implements NativeObject {
+  private static class Executor {
+    static final ExecutorService executor = executor();
+
+    private static ExecutorService executor() {
+      ExecutorService virtual = IsolatePool.virtualThreadExecutor();
+      if (virtual != null) return virtual;
+
+      AtomicInteger count = new AtomicInteger();
+      return Executors.newCachedThreadPool(runnable -> {
+        Thread thread =
+            new Thread(runnable, "lox-task-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  private final CompletableFuture<Object> result;
+
+  private Task(CompletableFuture<Object> result) {
+    this.result = result;
+  }
+
+  static Task spawn(Interpreter parent, LoxCallable body) {
+    Environment.share();
+    Interpreter interpreter = new Interpreter(parent);
+    return new Task(CompletableFuture.supplyAsync(
+        () -> body.call(interpreter, List.of()), Executor.executor));
+  }
+
+  // Waits for the task and returns what its function returned.
+  Object join() {
+    try {
+      return result.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException error) throw error;
+      if (e.getCause() instanceof Error error) throw error;
+      throw e;
+    }
+  }
+
+  private static final NativeMethod<Task> JOIN = new NativeMethod<>(
+      "join", 0, (task, interpreter, arguments) -> task.join());
+  private static final NativeMethod<Task> DONE = new NativeMethod<>(
+      "done", 0, (task, interpreter, arguments) -> task.result.isDone());
+
+  @Override
+  public NativeMethod<?> method(String name) {
+    return switch (name) {
+      case "join" -> JOIN;
+      case "done" -> DONE;
+      default -> null;
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "<task>";
+  }
+}
@@ -0,0 +1,149 @@
+package dev.muhings.lox;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import dev.muhings.lox.BulkMath.ArrayRun;
+import dev.muhings.lox.BulkMath.Run;
+
+/**
+ * The bulk math kernels written with the incubating Vector API, which
+ * compiles to the widest SIMD instructions the CPU has. Only loaded when
+ * asked for; see {@link BulkMath}.
+ *
+ * The API reads Java arrays the same way on every JDK since 17 but
+ * changed how it reads ByteBuffers, so runs of buffers go to the scalar
+ * kernels.
+ */
+final class VectorKernels implements BulkMath.Kernels {
+  private static final VectorSpecies<Double> SPECIES =
+      DoubleVector.SPECIES_PREFERRED;
+
+  private final BulkMath.Kernels scalar = new BulkMath.Scalar();
+
+  @Override
+  public double sum(Run x, int n) {
+    if (!(x instanceof ArrayRun a)) return scalar.sum(x, n);
+
+    DoubleVector sums = DoubleVector.zero(SPECIES);
+    int i = 0;
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      sums = sums.add(load(a, i));
+    }
+
+    double sum = sums.reduceLanes(VectorOperators.ADD);
+    for (; i < n; i++) sum += a.get(i);
+    return sum;
+  }
+
+  @Override
+  public double min(Run x, int n) {
+    if (!(x instanceof ArrayRun a)) return scalar.min(x, n);
+
+    DoubleVector least = DoubleVector.broadcast(SPECIES,
+                                                Double.POSITIVE_INFINITY);
+    int i = 0;
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      least = least.min(load(a, i));
+    }
+
+    double min = least.reduceLanes(VectorOperators.MIN);
+    for (; i < n; i++) min = Math.min(min, a.get(i));
+    return min;
+  }
+
+  @Override
+  public double max(Run x, int n) {
+    if (!(x instanceof ArrayRun a)) return scalar.max(x, n);
+
+    DoubleVector most = DoubleVector.broadcast(SPECIES,
+                                               Double.NEGATIVE_INFINITY);
+    int i = 0;
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      most = most.max(load(a, i));
+    }
+
+    double max = most.reduceLanes(VectorOperators.MAX);
+    for (; i < n; i++) max = Math.max(max, a.get(i));
+    return max;
+  }
+
+  @Override
+  public double dot(Run x, Run y, int n) {
+    if (!(x instanceof ArrayRun a && y instanceof ArrayRun b)) {
+      return scalar.dot(x, y, n);
+    }
+
+    DoubleVector sums = DoubleVector.zero(SPECIES);
+    int i = 0;
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      sums = sums.add(load(a, i).mul(load(b, i)));
+    }
+
+    double sum = sums.reduceLanes(VectorOperators.ADD);
+    for (; i < n; i++) sum += a.get(i) * b.get(i);
+    return sum;
+  }
+
+  @Override
+  public void add(Run x, Run y, int n) {
+    if (!(x instanceof ArrayRun a && y instanceof ArrayRun b)) {
+      scalar.add(x, y, n);
+      return;
+    }
+
+    int i = 0;
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      load(a, i).add(load(b, i)).intoArray(a.array, a.offset + i);
+    }
+    for (; i < n; i++) a.set(i, a.get(i) + b.get(i));
+  }
+
+  @Override
+  public void multiply(Run x, Run y, int n) {
+    if (!(x instanceof ArrayRun a && y instanceof ArrayRun b)) {
+      scalar.multiply(x, y, n);
+      return;
+    }
+
+    int i = 0;
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      load(a, i).mul(load(b, i)).intoArray(a.array, a.offset + i);
+    }
+    for (; i < n; i++) a.set(i, a.get(i) * b.get(i));
+  }
+
+  @Override
+  public void scale(Run x, double factor, int n) {
+    if (!(x instanceof ArrayRun a)) {
+      scalar.scale(x, factor, n);
+      return;
+    }
+
+    int i = 0;
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      load(a, i).mul(factor).intoArray(a.array, a.offset + i);
+    }
+    for (; i < n; i++) a.set(i, a.get(i) * factor);
+  }
+
+  @Override
+  public void fma(Run x, Run y, Run z, int n) {
+    if (!(x instanceof ArrayRun a && y instanceof ArrayRun b &&
+          z instanceof ArrayRun c)) {
+      scalar.fma(x, y, z, n);
+      return;
+    }
+
+    int i = 0;
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      load(b, i).fma(load(c, i), load(a, i)).intoArray(a.array, a.offset + i);
+    }
+    for (; i < n; i++) a.set(i, Math.fma(b.get(i), c.get(i), a.get(i)));
+  }
+
+  private static DoubleVector load(ArrayRun run, int i) {
+    return DoubleVector.fromArray(SPECIES, run.array, run.offset + i);
+  }
+}
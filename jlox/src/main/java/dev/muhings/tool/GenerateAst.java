@@ -25,8 +25,12 @@ public class GenerateAst {
 			"Call     : Expr callee, Token paren, List<Expr> arguments", 
 			"Grouping : Expr expression", 
 			"Variable : Token name", 
-			"Assign   : Token name, Expr value"
-		), Arrays.asList("import java.util.List;"));
+			"Assign   : Token name, Expr value", 
+			"Index    : Expr object, Token bracket, Expr index", 
+			"SetIndex : Expr object, Token bracket, Expr index, Expr value", 
+			"Array    : Token bracket, List<Expr> elements"
+		), Arrays.asList("import java.util.List;"),
+		Arrays.asList("long executions", "int depth = -1"));
 
 		defineAst(outputDir, "Stmt", Arrays.asList(
 			"Expression : Expr expression",
@@ -38,14 +42,16 @@ public class GenerateAst {
 			"Return     : Token keyword, Expr value",
 			"Var        : Token name, Expr initializer",
 			"While      : Expr condition, Stmt body"
-		), Arrays.asList("import java.util.List;"));
+		), Arrays.asList("import java.util.List;"),
+		Arrays.asList("int line", "long executions", "long selfNanos"));
   }
 
 	private static void defineAst(
 		String outputDir, 
 		String baseName, 
 		List<String> types, 
-		List<String> imports
+		List<String> imports,
+		List<String> baseFields
 	) throws IOException {
 		var path = outputDir + "/" + baseName + ".java";
 		var writer = new PrintWriter(path, "UTF-8");
@@ -68,6 +74,15 @@ public class GenerateAst {
 		writer.println("  abstract <R> R accept(Visitor<R> visitor);");
 		writer.println();
 
+		// Mutable bookkeeping shared by every node, filled in by the parser,
+		// the resolver and the interpreter's instrumented mode. An Expr's
+		// depth is its scope distance, or -1 for a global, kept on the node
+		// so that it is collected with the AST.
+		for (var field : baseFields) {
+			writer.println("  " + field + ";");
+		}
+		writer.println();
+
 		for (var type : types) {
 			String className = type.split(":")[0].trim();
 			String fields = type.split(":")[1].trim();
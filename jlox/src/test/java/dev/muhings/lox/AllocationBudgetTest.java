@@ -0,0 +1,177 @@
+package dev.muhings.lox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Allocation budgets for the interpreter's hot paths. Each test defines a
+ * Lox function work(n) that runs a loop n times, warms it up, and then
+ * measures the bytes the current thread allocates for n and for 2n
+ * iterations. The difference divided by n is the cost of one iteration,
+ * free of the fixed cost of the call and of the warm-up.
+ *
+ * The budgets are what the interpreter allocates today plus about 10%,
+ * in multiples of the 8 bytes objects are aligned to. When an
+ * optimization brings an iteration down, lower its budget so the gain
+ * cannot quietly regress.
+ */
+public class AllocationBudgetTest {
+  private static final int ITERATIONS = 10_000;
+  private static final int WARMUP_CALLS = 20;
+
+  private static final ThreadMXBean threads =
+      (ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+  @BeforeClass
+  public static void allocationCountingIsSupported() {
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @Test
+  public void arithmeticLoop() {
+    assertBudget(192,
+        "fun work(n) {\n" +
+        "  var sum = 0;\n" +
+        "  var i = 0;\n" +
+        "  while (i < n) {\n" +
+        "    sum = sum + i * 2;\n" +
+        "    i = i + 1;\n" +
+        "  }\n" +
+        "  return sum;\n" +
+        "}\n");
+  }
+
+  @Test
+  public void functionCall() {
+    assertBudget(528,
+        "fun add(a, b) { return a + b; }\n" +
+        "fun work(n) {\n" +
+        "  var sum = 0;\n" +
+        "  for (var i = 0; i < n; i = i + 1) sum = add(sum, i);\n" +
+        "  return sum;\n" +
+        "}\n");
+  }
+
+  @Test
+  public void methodCall() {
+    assertBudget(528,
+        "class Counter {\n" +
+        "  init() { this.count = 0; }\n" +
+        "  increment() { this.count = this.count + 1; }\n" +
+        "}\n" +
+        "fun work(n) {\n" +
+        "  var counter = Counter();\n" +
+        "  for (var i = 0; i < n; i = i + 1) counter.increment();\n" +
+        "  return counter.count;\n" +
+        "}\n");
+  }
+
+  @Test
+  public void fieldAccess() {
+    assertBudget(160,
+        "class Point {\n" +
+        "  init(x, y) { this.x = x; this.y = y; }\n" +
+        "}\n" +
+        "fun work(n) {\n" +
+        "  var point = Point(0, 0);\n" +
+        "  for (var i = 0; i < n; i = i + 1) point.x = point.x + point.y;\n" +
+        "  return point.x;\n" +
+        "}\n");
+  }
+
+  @Test
+  public void closureCall() {
+    assertBudget(344,
+        "fun makeCounter() {\n" +
+        "  var count = 0;\n" +
+        "  fun counter() { count = count + 1; return count; }\n" +
+        "  return counter;\n" +
+        "}\n" +
+        "fun work(n) {\n" +
+        "  var counter = makeCounter();\n" +
+        "  for (var i = 0; i < n; i = i + 1) counter();\n" +
+        "  return counter();\n" +
+        "}\n");
+  }
+
+  @Test
+  public void nativeMethodCall() {
+    assertBudget(376,
+        "fun work(n) {\n" +
+        "  var counts = Map();\n" +
+        "  counts.set(\"k\", 0);\n" +
+        "  for (var i = 0; i < n; i = i + 1) {\n" +
+        "    counts.set(\"k\", counts.get(\"k\") + 1);\n" +
+        "  }\n" +
+        "  return counts.get(\"k\");\n" +
+        "}\n");
+  }
+
+  @Test
+  public void printNumbers() {
+    assertBudget(272,
+        "fun work(n) {\n" +
+        "  for (var i = 0; i < n; i = i + 1) {\n" +
+        "    print i;\n" +
+        "    print i / 4;\n" +
+        "  }\n" +
+        "}\n");
+  }
+
+  private static void assertBudget(long bytesPerIteration, String source) {
+    Interpreter interpreter = new Interpreter();
+    // Printed output is formatted and buffered, then thrown away.
+    interpreter.out = new OutputSink(Writer.nullWriter(), OutputSink.Flush.FULL);
+    LoxCallable work = load(interpreter, source);
+
+    for (int i = 0; i < WARMUP_CALLS; i++) call(interpreter, work, ITERATIONS);
+
+    long once = allocated(interpreter, work, ITERATIONS);
+    long twice = allocated(interpreter, work, 2 * ITERATIONS);
+    long perIteration = Math.max(0, twice - once) / ITERATIONS;
+
+    assertTrue("allocated " + perIteration + " bytes per iteration, " +
+               "budget is " + bytesPerIteration,
+               perIteration <= bytesPerIteration);
+  }
+
+  private static LoxCallable load(Interpreter interpreter, String source) {
+    StringBuilder errors = new StringBuilder();
+    ErrorReporter reporter = (line, where, message) ->
+        errors.append("[line ").append(line).append("] Error")
+              .append(where).append(": ").append(message).append('\n');
+
+    List<Token> tokens = new Scanner(source, 0, source.length(), 1, reporter)
+        .scanTokens();
+    List<Stmt> statements = new Parser(tokens, reporter).parse();
+    new Resolver(interpreter, reporter).resolve(statements);
+    assertEquals("", errors.toString());
+
+    interpreter.interpret(statements);
+    return (LoxCallable)interpreter.globals.get(
+        new Token(TokenType.IDENTIFIER, "work", null, 0));
+  }
+
+  private static long allocated(Interpreter interpreter, LoxCallable work,
+                                int iterations) {
+    long before = threads.getCurrentThreadAllocatedBytes();
+    call(interpreter, work, iterations);
+    return threads.getCurrentThreadAllocatedBytes() - before;
+  }
+
+  private static void call(Interpreter interpreter, LoxCallable work,
+                           int iterations) {
+    work.call(interpreter, List.of((double)iterations));
+  }
+}
@@ -1,19 +0,0 @@
-package dev.muhings.lox;
-
-import static org.junit.Assert.assertTrue;
-import org.junit.Test;
-
-/**
- * Unit test for simple App.
- */
-public class AppTest 
-{
-    /**
-     * Rigorous Test :-)
-     */
-    @Test
-    public void shouldAnswerWithTrue()
-    {
-        assertTrue( true );
-    }
-}
@@ -0,0 +1,104 @@
+package dev.muhings.lox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A cache file that is cut short or damaged anywhere must load as a miss
+ * or as some program, never fail the run.
+ */
+public class AstCacheTest {
+  private static final String SOURCE =
+      "var greeting = \"hi\";\n" +
+      "class Point {\n" +
+      "  init(x, y) { this.x = x; this.y = y; }\n" +
+      "  sum() { return this.x + this.y; }\n" +
+      "}\n" +
+      "fun count(n) {\n" +
+      "  var total = 0;\n" +
+      "  for (var i = 0; i < n; i = i + 1) total = total + i;\n" +
+      "  return [total, nil, true, -1.5][0];\n" +
+      "}\n" +
+      "print count(Point(1, 2).sum()) or greeting;\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void loadsWhatItStored() throws IOException {
+    Path script = folder.newFile("script.lox").toPath();
+    AstCache cache = store(script);
+
+    List<Stmt> loaded = cache.load(interpreter());
+    assertNotNull(loaded);
+    assertEquals(new AstPrinter().print(parse()),
+                 new AstPrinter().print(loaded));
+  }
+
+  @Test
+  public void damagedFilesAreMisses() throws IOException {
+    Path script = folder.newFile("script.lox").toPath();
+    AstCache cache = store(script);
+    Path file = script.resolveSibling("script.lox.cache");
+    byte[] bytes = Files.readAllBytes(file);
+
+    for (int i = 0; i < bytes.length; i++) {
+      Files.write(file, Arrays.copyOf(bytes, i));
+      cache.load(interpreter());
+
+      // All ones make a long varint, zero an empty count.
+      for (byte damage : new byte[] {(byte)0xFF, (byte)0x7F, 0, 1}) {
+        byte[] damaged = bytes.clone();
+        damaged[i] = damage;
+        Files.write(file, damaged);
+        cache.load(interpreter());
+      }
+
+      // Five-byte varints for -1 and Integer.MAX_VALUE, which as lengths
+      // fail the allocation itself.
+      for (byte last : new byte[] {0x0F, 0x07}) {
+        byte[] damaged = bytes.clone();
+        for (int j = i; j < Math.min(i + 4, bytes.length); j++) {
+          damaged[j] = (byte)0xFF;
+        }
+        if (i + 4 < bytes.length) damaged[i + 4] = last;
+        Files.write(file, damaged);
+        cache.load(interpreter());
+      }
+    }
+  }
+
+  private static AstCache store(Path script) throws IOException {
+    byte[] source = SOURCE.getBytes(StandardCharsets.UTF_8);
+    Files.write(script, source);
+    AstCache cache = AstCache.forScript(script, source);
+    cache.store(parse(), interpreter());
+    return cache;
+  }
+
+  private static List<Stmt> parse() {
+    ErrorReporter reporter = (line, where, message) -> {
+      throw new AssertionError(message);
+    };
+    List<Token> tokens =
+        new Scanner(SOURCE, 0, SOURCE.length(), 1, reporter).scanTokens();
+    List<Stmt> statements = new Parser(tokens, reporter).parse();
+    new Resolver(interpreter(), reporter).resolve(statements);
+    return statements;
+  }
+
+  private static Interpreter interpreter() {
+    return new Interpreter((OutputSink)null);
+  }
+}
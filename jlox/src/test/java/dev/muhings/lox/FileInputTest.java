@@ -0,0 +1,119 @@
+package dev.muhings.lox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * FileInput with windows of a few bytes instead of 16 MB, so that lines
+ * and characters land across window edges at every offset. Each file is
+ * read with every window size from the smallest up to past its length
+ * and compared with what reading it whole gives.
+ */
+public class FileInputTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void linesSlideTheWindow() throws IOException {
+    assertLines("a\nbb\nccc\n\ndddd\ne");
+    assertLines("one\ntwo\nthree\n");
+    assertLines("\n\n\n");
+    assertLines("");
+  }
+
+  @Test
+  public void linesLongerThanTheWindow() throws IOException {
+    assertLines("short\n" + "x".repeat(50) + "\nshort\n" + "y".repeat(23));
+  }
+
+  @Test
+  public void crlfSplitAcrossWindows() throws IOException {
+    assertLines("ab\r\ncd\r\n\r\nefghij\r\nk\r\n");
+    assertLines("a\r\n" + "b".repeat(20) + "\r\nc");
+    // A carriage return without a newline stays in the line.
+    assertLines("a\rb\r\nc\r");
+  }
+
+  @Test
+  public void linesKeepMultibyteCharacters() throws IOException {
+    assertLines("héllo\nwörld\r\n€uro\n😀 smile\n");
+  }
+
+  @Test
+  public void chunksNeverSplitACharacter() throws IOException {
+    String text = "aé€😀b\n€€€é😀😀ccé";
+    Path file = write(text);
+    for (int window = 4; window <= 40; window++) {
+      for (int chunk = 1; chunk <= 12; chunk++) {
+        List<String> chunks = readAll(file, chunk, window);
+        String message = "window " + window + ", chunk " + chunk;
+        assertEquals(message, text, String.join("", chunks));
+        for (String piece : chunks) {
+          assertTrue(message, !piece.isEmpty());
+          assertTrue(message, !piece.contains("�"));
+          int bytes = piece.getBytes(StandardCharsets.UTF_8).length;
+          // Only a chunk too short for one character holds more.
+          assertTrue(message, bytes <= Math.max(chunk, 4));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void nextAfterTheEndIsNil() throws IOException {
+    FileInput input = FileInput.open(write("a\n"), 0, 4);
+    assertEquals("a", input.next());
+    assertNull(input.next());
+
+    try {
+      input.next();
+    } catch (NativeError e) {
+      assertEquals("File is closed.", e.getMessage());
+      return;
+    }
+    throw new AssertionError("read a closed file");
+  }
+
+  private void assertLines(String text) throws IOException {
+    List<String> expected = new ArrayList<>();
+    if (!text.isEmpty()) {
+      String body = text.endsWith("\n") ?
+          text.substring(0, text.length() - 1) : text;
+      for (String line : body.split("\n", -1)) {
+        expected.add(line.endsWith("\r") ?
+            line.substring(0, line.length() - 1) : line);
+      }
+    }
+
+    Path file = write(text);
+    int length = text.getBytes(StandardCharsets.UTF_8).length;
+    for (int window = 1; window <= length + 2; window++) {
+      assertEquals("window " + window, expected, readAll(file, 0, window));
+    }
+  }
+
+  private Path write(String text) throws IOException {
+    Path file = folder.newFile().toPath();
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static List<String> readAll(Path file, int chunkSize, int window) {
+    FileInput input = FileInput.open(file, chunkSize, window);
+    List<String> pieces = new ArrayList<>();
+    for (String piece; (piece = input.next()) != null; ) pieces.add(piece);
+    return pieces;
+  }
+}
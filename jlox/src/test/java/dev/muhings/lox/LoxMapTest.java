@@ -0,0 +1,176 @@
+package dev.muhings.lox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * LoxMap against java.util.HashMap. Deleting shifts later entries of a
+ * cluster back into the hole, which only goes wrong for particular
+ * layouts, so besides bulk inserts and deletes these build clusters on
+ * purpose, including ones that wrap around the end of the table, by
+ * picking keys from where they land in an empty map.
+ */
+public class LoxMapTest {
+  // The smallest table, before the map first grows.
+  private static final int CAPACITY = 8;
+
+  @Test
+  public void deletingEveryKthKeyKeepsTheRest() {
+    for (int k = 1; k <= 5; k++) {
+      LoxMap map = new LoxMap();
+      Map<Object, Object> expected = new HashMap<>();
+      for (int i = 0; i < 10_000; i++) {
+        map.set((double)i, "v" + i);
+        expected.put((double)i, "v" + i);
+      }
+
+      for (int i = 0; i < 10_000; i += k) {
+        assertTrue(map.delete((double)i));
+        expected.remove((double)i);
+      }
+      assertFalse(map.delete(0.0));
+
+      assertSameEntries(expected, map);
+      for (int i = 0; i < 10_000; i++) {
+        assertEquals(expected.get((double)i), map.get((double)i));
+      }
+    }
+  }
+
+  @Test
+  public void deletingFromClustersThatWrapAround() {
+    // Three keys at home in the last slot fill it and the first two.
+    List<Double> last = keysWithHome(CAPACITY - 1, 3);
+    for (int deleted = 0; deleted < 3; deleted++) {
+      LoxMap map = new LoxMap();
+      for (Double key : last) map.set(key, key);
+      assertEquals(CAPACITY, map.capacity());
+
+      map.delete(last.get(deleted));
+      for (int i = 0; i < 3; i++) {
+        assertEquals(i != deleted, map.has(last.get(i)));
+      }
+    }
+
+    // A key at home in slot 0 behind a cluster that wrapped onto it must
+    // not move back past its home when the cluster shrinks.
+    Double wrapping = keysWithHome(CAPACITY - 1, 2).get(1);
+    Double first = keysWithHome(0, 1).get(0);
+    LoxMap map = new LoxMap();
+    map.set(last.get(0), "a");
+    map.set(wrapping, "b");
+    map.set(first, "c");
+    map.delete(last.get(0));
+    assertEquals("b", map.get(wrapping));
+    assertEquals("c", map.get(first));
+    assertEquals(2, map.size());
+  }
+
+  @Test
+  public void growsPastTwoThirdsFull() {
+    LoxMap map = new LoxMap();
+    int limit = CAPACITY / 3 * 2;
+    for (int i = 0; i < limit; i++) map.set((double)i, null);
+    assertEquals(CAPACITY, map.capacity());
+
+    map.set((double)limit, null);
+    assertEquals(2 * CAPACITY, map.capacity());
+    for (int i = 0; i <= limit; i++) assertTrue(map.has((double)i));
+  }
+
+  @Test
+  public void randomOperationsMatchHashMap() {
+    java.util.Random random = new java.util.Random(46);
+    LoxMap map = new LoxMap();
+    Map<Object, Object> expected = new HashMap<>();
+    for (int i = 0; i < 200_000; i++) {
+      Double key = (double)random.nextInt(2_000);
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key) != null, map.delete(key));
+      } else {
+        expected.put(key, i);
+        map.set(key, i);
+      }
+    }
+
+    assertSameEntries(expected, map);
+  }
+
+  @Test
+  public void mixedKeys() {
+    LoxClass klass = new LoxClass("Point", null, new HashMap<>());
+    LoxInstance a = new LoxInstance(klass);
+    LoxInstance b = new LoxInstance(klass);
+
+    LoxMap map = new LoxMap();
+    map.set(1.0, "number");
+    map.set("1", "string");
+    map.set(true, "true");
+    map.set(false, "false");
+    map.set(a, "a");
+    map.set(b, "b");
+
+    assertEquals(6, map.size());
+    assertEquals("number", map.get(1.0));
+    // Strings compare by value, not by identity.
+    assertEquals("string", map.get(new String("1")));
+    assertEquals("true", map.get(true));
+    assertEquals("false", map.get(false));
+    // Instances compare by identity.
+    assertEquals("a", map.get(a));
+    assertEquals("b", map.get(b));
+    assertNull(map.get(new LoxInstance(klass)));
+    assertNull(map.get(2.0));
+
+    map.set("1", "again");
+    assertEquals(6, map.size());
+    assertEquals("again", map.get("1"));
+
+    assertTrue(map.delete(a));
+    assertFalse(map.has(a));
+    assertSame("b", map.get(b));
+    try {
+      map.set(null, 1.0);
+      fail("nil key accepted");
+    } catch (NativeError e) {
+      assertEquals("Map keys can't be nil.", e.getMessage());
+    }
+  }
+
+  // The first count whole numbers whose home slot in a new map is slot.
+  private static List<Double> keysWithHome(int slot, int count) {
+    List<Double> keys = new ArrayList<>();
+    for (int i = 0; keys.size() < count; i++) {
+      LoxMap map = new LoxMap();
+      Double key = (double)i;
+      map.set(key, null);
+      if (map.table()[2 * slot] == key) keys.add(key);
+    }
+    return keys;
+  }
+
+  private static void assertSameEntries(Map<Object, Object> expected,
+                                        LoxMap map) {
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<Object, Object> entry : expected.entrySet()) {
+      assertTrue(map.has(entry.getKey()));
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+
+    Object[] keys = new Object[map.size()];
+    LoxArray array = map.keys();
+    for (int i = 0; i < keys.length; i++) keys[i] = array.get(i);
+    assertEquals(expected.keySet(), new java.util.HashSet<>(List.of(keys)));
+  }
+}
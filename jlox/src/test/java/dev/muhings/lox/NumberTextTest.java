@@ -0,0 +1,120 @@
+package dev.muhings.lox;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * NumberText against the stringify it replaced, Double.toString without
+ * a trailing ".0", on the cases where the fast path could go wrong and
+ * on a seeded run of random doubles of every shape.
+ */
+public class NumberTextTest {
+  @Test
+  public void zeroKeepsItsSign() {
+    assertFormat("0", 0.0);
+    assertFormat("-0", -0.0);
+  }
+
+  @Test
+  public void wholeNumbers() {
+    assertFormat("1", 1.0);
+    assertFormat("-42", -42.0);
+    assertFormat("9999999", 9999999.0);
+    assertFormat("1.0E7", 1e7);
+    assertFormat("1.23456789E8", 123456789.0);
+  }
+
+  @Test
+  public void shortestDecimal() {
+    assertFormat("0.30000000000000004", 0.1 + 0.2);
+    assertFormat("0.3333333333333333", 1.0 / 3);
+    assertFormat("-0.6666666666666666", -2.0 / 3);
+    assertFormat("0.1", 0.1);
+    assertFormat("2.5", 2.5);
+    assertFormat("123.456", 123.456);
+  }
+
+  @Test
+  public void powersOfTwo() {
+    // Below a power of two the doubles are twice as dense as above it.
+    for (int exponent = -30; exponent <= 30; exponent++) {
+      double power = Math.scalb(1.0, exponent);
+      assertSame(power);
+      assertSame(Math.nextUp(power));
+      assertSame(Math.nextDown(power));
+      assertSame(power * 1.5);
+    }
+  }
+
+  @Test
+  public void exponentBoundaries() {
+    assertFormat("0.001", 1e-3);
+    assertFormat("9.99E-4", 9.99e-4);
+    assertFormat("9.999999999999998E-4", Math.nextDown(1e-3));
+    assertFormat("0.0010000000000000002", Math.nextUp(1e-3));
+    assertFormat("9999999.999999998", Math.nextDown(1e7));
+    assertFormat("1.0000000000000002E7", Math.nextUp(1e7));
+    for (double value : new double[] {1e-3, 1e7}) {
+      for (int i = -50; i <= 50; i++) {
+        double near = value + i * Math.ulp(value);
+        assertSame(near);
+        assertSame(-near);
+      }
+    }
+  }
+
+  @Test
+  public void notFinite() {
+    assertFormat("NaN", Double.NaN);
+    assertFormat("Infinity", Double.POSITIVE_INFINITY);
+    assertFormat("-Infinity", Double.NEGATIVE_INFINITY);
+  }
+
+  @Test
+  public void writesAtAnOffset() {
+    char[] text = new char[3 + NumberText.MAX_LENGTH];
+    int end = NumberText.write(-12.5, text, 3);
+    assertEquals("-12.5", new String(text, 3, end - 3));
+    assertEquals(-1, NumberText.write(Double.NaN, text, 3));
+  }
+
+  @Test
+  public void randomNumbersMatchTheOldStringify() {
+    Random random = new Random(50);
+    for (int i = 0; i < 200_000; i++) {
+      // Any bit pattern, mostly huge or tiny.
+      assertSame(Double.longBitsToDouble(random.nextLong()));
+      // Uniform over the plain range, at full precision.
+      assertSame(random.nextDouble() * 1e7);
+      // A few decimals, as scripts mostly print.
+      assertSame(random.nextInt(10_000_000) / 1000.0);
+      assertSame(random.nextInt(1_000_000) / 100.0);
+      // Sums and quotients that pick up rounding error.
+      assertSame(random.nextInt(1000) / 10.0 + random.nextInt(1000) / 100.0);
+      assertSame((double)random.nextInt(1000) / (1 + random.nextInt(999)));
+      // Whole numbers on both sides of 1e7.
+      assertSame((double)random.nextInt(20_000_000));
+    }
+  }
+
+  private static void assertSame(double value) {
+    assertFormat(stringify(value), value);
+  }
+
+  private static void assertFormat(String expected, double value) {
+    assertEquals("bits " + Long.toHexString(Double.doubleToRawLongBits(value)),
+                 expected, NumberText.format(value));
+  }
+
+  // What Interpreter.stringify did before NumberText.
+  private static String stringify(double value) {
+    String text = Double.toString(value);
+    if (text.endsWith(".0")) {
+      text = text.substring(0, text.length() - 2);
+    }
+    return text;
+  }
+}
@@ -0,0 +1,155 @@
+package dev.muhings.lox;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ParallelFrontEnd against one Scanner and Parser over the whole source.
+ * The segments are forced down to a few characters, so the source is cut
+ * at nearly every boundary, and the generated programs put "};" and
+ * keywords inside strings and comments where a careless split would
+ * fall. The trees are compared printed and as cache files, which hold
+ * the line of every token and statement.
+ */
+public class ParallelFrontEndTest {
+  private static final String[] DECLARATIONS = {
+    "var greeting = \"}; fun fake() {\";\n",
+    "print \"first line\n}; var second = line\";\n",
+    "// }; class Fake { } var y = 1;\n",
+    "fun pick(a, b) {\n" +
+    "  // return }; var\n" +
+    "  if (a > b) { return a; } else { return \"{\"; }\n" +
+    "}\n",
+    "class Point < Base {\n  sum() { return this.x + this.y; }\n}\n",
+    "for (var i = 0; i < 3; i = i + 1) { print i; }\n",
+    "while (false) print \"while (\";\n",
+    "{ var inner = \"}\"; print inner; }\n",
+    "print [1, 2, 3][0]; // ; fun\n",
+    "if (true) print 1; else print 2;\n",
+    "\n\n",
+    "var a = 1; var b = 2;fun c() {}class D {}\n",
+  };
+
+  // Errors that keep brackets balanced, so the split still happens
+  // around them.
+  private static final String[] ERRORS = {
+    "var @ = 1;\n",
+    "var = 1;\n",
+    "print ;\n",
+    "class { }\n",
+    "fun f(a,) { }\n",
+    "1 + ;\n",
+  };
+
+  private static final int[] SEGMENT_LENGTHS = {1, 5, 40, 300};
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void matchesTheSerialParse() throws IOException {
+    Random random = new Random(26);
+    for (int program = 0; program < 20; program++) {
+      String source = generate(random, 60, false);
+      Parsed serial = serial(source);
+      assertEquals(List.of(), serial.errors);
+
+      for (int length : SEGMENT_LENGTHS) {
+        Parsed parallel = parallel(source, length, false);
+        String message = "program " + program + ", segments of " + length;
+        assertEquals(message, List.of(), parallel.errors);
+        assertEquals(message, print(serial.statements),
+                     print(parallel.statements));
+        assertArrayEquals(message, cache(serial.statements),
+                          cache(parallel.statements));
+      }
+    }
+  }
+
+  @Test
+  public void reportsErrorsInOrder() {
+    Random random = new Random(260);
+    for (int program = 0; program < 20; program++) {
+      String source = generate(random, 60, true);
+      Parsed serial = serial(source);
+      assertTrue(serial.errors.size() > 1);
+
+      for (int length : SEGMENT_LENGTHS) {
+        for (boolean lazy : new boolean[] {false, true}) {
+          assertEquals("program " + program + ", segments of " + length,
+                       serial.errors, parallel(source, length, lazy).errors);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void unbalancedBracketsStayInOneSegment() {
+    String source = "print 1;\n}\nvar x = ;\nprint \"}\";\n";
+    assertEquals(serial(source).errors, parallel(source, 1, false).errors);
+  }
+
+  private static String generate(Random random, int declarations,
+                                 boolean withErrors) {
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < declarations; i++) {
+      if (withErrors && random.nextInt(6) == 0) {
+        source.append(ERRORS[random.nextInt(ERRORS.length)]);
+      } else {
+        source.append(DECLARATIONS[random.nextInt(DECLARATIONS.length)]);
+      }
+    }
+    return source.toString();
+  }
+
+  private static class Parsed implements ErrorReporter {
+    final List<String> errors = new ArrayList<>();
+    List<Stmt> statements;
+
+    @Override
+    public void report(int line, String where, String message) {
+      errors.add("[line " + line + "] Error" + where + ": " + message);
+    }
+  }
+
+  private static Parsed serial(String source) {
+    Parsed parsed = new Parsed();
+    List<Token> tokens =
+        new Scanner(source, 0, source.length(), 1, parsed).scanTokens();
+    parsed.statements = new Parser(tokens, parsed).parse();
+    return parsed;
+  }
+
+  private static Parsed parallel(String source, int segmentLength,
+                                 boolean lazy) {
+    Parsed parsed = new Parsed();
+    parsed.statements =
+        ParallelFrontEnd.parse(source, parsed, lazy, segmentLength);
+    return parsed;
+  }
+
+  private static String print(List<Stmt> statements) {
+    return new AstPrinter().print(statements);
+  }
+
+  // The cache file of the statements, which records every line.
+  private byte[] cache(List<Stmt> statements) throws IOException {
+    Path script = folder.newFile().toPath();
+    AstCache.forScript(script, new byte[0])
+        .store(statements, new Interpreter((OutputSink)null));
+    return Files.readAllBytes(
+        script.resolveSibling(script.getFileName() + ".cache"));
+  }
+}